@@ -1,11 +1,13 @@
 package ncpl.bms.reports.controller;
 
 import ncpl.bms.reports.service.AlarmReportService;
+import ncpl.bms.reports.service.ReportDownloadService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import java.util.Map;
 
 import java.text.SimpleDateFormat;
@@ -19,6 +21,9 @@ public class AlarmReportController {
     @Autowired
     private AlarmReportService alarmService;
 
+    @Autowired
+    private ReportDownloadService reportDownloadService;
+
     // ✅ 1. Download Alarm Report → Save into Database automatically
     @GetMapping("/download")
     public ResponseEntity<byte[]> downloadAndSaveAlarmReport(@RequestParam String startDate,
@@ -66,18 +71,10 @@ public class AlarmReportController {
 
     // ✅ 2. View Stored Alarm Report by ID
     @GetMapping("/view/{id}")
-    public ResponseEntity<byte[]> viewStoredAlarmReport(@PathVariable int id) {
+    public ResponseEntity<StreamingResponseBody> viewStoredAlarmReport(@PathVariable int id, @RequestHeader HttpHeaders headers) {
         try {
-            byte[] pdfBytes = alarmService.getStoredAlarmReportById(id);
-
-            if (pdfBytes == null || pdfBytes.length == 0) {
-                return ResponseEntity.noContent().build();
-            }
-
-            return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=stored_alarm_report_" + id + ".pdf")
-                    .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_PDF_VALUE)
-                    .body(pdfBytes);
+            // ETag, 304 and byte ranges; 204 when the report has no PDF
+            return reportDownloadService.download("StoredAlarmReport", id, "inline; filename=stored_alarm_report_" + id + ".pdf", headers);
 
         } catch (Exception e) {
             e.printStackTrace();
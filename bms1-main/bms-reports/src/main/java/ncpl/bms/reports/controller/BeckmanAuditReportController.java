@@ -1,11 +1,13 @@
 package ncpl.bms.reports.controller;
 
 import ncpl.bms.reports.service.BeckmanAuditReportService;
+import ncpl.bms.reports.service.ReportDownloadService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
         import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -18,6 +20,9 @@ public class BeckmanAuditReportController {
     @Autowired
     private BeckmanAuditReportService auditService;
 
+    @Autowired
+    private ReportDownloadService reportDownloadService;
+
     @GetMapping("/download")
     public ResponseEntity<byte[]> downloadAuditReport(@RequestParam String startDate,
                                                       @RequestParam String endDate) {
@@ -50,17 +55,9 @@ public class BeckmanAuditReportController {
     }
 
     @GetMapping("/view/{id}")
-    public ResponseEntity<byte[]> viewStoredAuditReport(@PathVariable int id) {
-        byte[] pdfBytes = auditService.getStoredAuditReportById(id);
-
-        if (pdfBytes == null || pdfBytes.length == 0) {
-            return ResponseEntity.noContent().build();
-        }
-
-        return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=stored_audit_report_" + id + ".pdf")
-                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_PDF_VALUE)
-                .body(pdfBytes);
+    public ResponseEntity<StreamingResponseBody> viewStoredAuditReport(@PathVariable int id, @RequestHeader HttpHeaders headers) {
+        // ETag, 304 and byte ranges; 204 when the report has no PDF
+        return reportDownloadService.download("StoredAuditReport", id, "inline; filename=stored_audit_report_" + id + ".pdf", headers);
     }
 
     // ✅ Flexible date parsing utility
@@ -2,6 +2,8 @@ package ncpl.bms.reports.controller;
 import lombok.extern.slf4j.Slf4j;
 import ncpl.bms.reports.db.info.TableInfoService;
 import ncpl.bms.reports.model.dto.ReportDTO;
+import ncpl.bms.reports.model.dto.ReportListFilter;
+import ncpl.bms.reports.model.dto.ReportPage;
 import ncpl.bms.reports.service.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
@@ -9,6 +11,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import java.util.List;
 import java.util.Map;
 
@@ -24,6 +27,12 @@ public class DailySchedulingController {
     @Autowired
     private DailySchedulingService dailySchedulingService;
 
+    @Autowired
+    private ReportDownloadService reportDownloadService;
+
+    @Autowired
+    private ReportListingService reportListingService;
+
     @Autowired
     private TableInfoService tableInfoService;
     @Autowired
@@ -49,16 +58,23 @@ public class DailySchedulingController {
         }
     }
 
-    @GetMapping("/daily-reports/{id}")
-    public ResponseEntity<byte[]> getReportById(@PathVariable Long id) {
-        ReportDTO reportDTO = dailySchedulingService.getDailyReportById(id);
-        if (reportDTO == null) {
-            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+    // One page of the listing, newest first; pass the returned nextCursor to get the following page
+    @GetMapping("/daily-reports/page")
+    public ResponseEntity<ReportPage<ReportDTO>> getReportPage(ReportListFilter filter) {
+        try {
+            return ResponseEntity.ok(reportListingService.listReports("stored_reports_daily", filter));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            log.error("Error fetching daily reports page", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
-        HttpHeaders headers = new HttpHeaders();
-        headers.add(HttpHeaders.CONTENT_TYPE, "application/pdf");
-        headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=report_" + id + ".pdf");
-        return new ResponseEntity<>(reportDTO.getPdfData(), headers, HttpStatus.OK);
+    }
+
+    @GetMapping("/daily-reports/{id}")
+    public ResponseEntity<StreamingResponseBody> getReportById(@PathVariable Long id, @RequestHeader HttpHeaders headers) {
+        // ETag, 304 and byte ranges; the PDF is streamed, never loaded into a byte[]
+        return reportDownloadService.download("stored_reports_daily", id, "attachment; filename=report_" + id + ".pdf", headers);
     }
 
     @PutMapping("/daily-reports/review/{id}")
@@ -2,6 +2,8 @@ package ncpl.bms.reports.controller;
 import lombok.extern.slf4j.Slf4j;
 import ncpl.bms.reports.db.info.TableInfoService;
 import ncpl.bms.reports.model.dto.ReportDTO;
+import ncpl.bms.reports.model.dto.ReportListFilter;
+import ncpl.bms.reports.model.dto.ReportPage;
 import ncpl.bms.reports.service.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
@@ -9,6 +11,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import java.util.List;
 import java.util.Map;
 
@@ -22,6 +25,12 @@ public class MonthlySchedulingController {
     @Autowired
     private MonthlySchedulingService monthlySchedulingService;
 
+    @Autowired
+    private ReportDownloadService reportDownloadService;
+
+    @Autowired
+    private ReportListingService reportListingService;
+
     @Autowired
     private TableInfoService tableInfoService;
     @Autowired
@@ -47,16 +56,23 @@ public class MonthlySchedulingController {
         }
     }
 
-    @GetMapping("/monthly-reports/{id}")
-    public ResponseEntity<byte[]> getReportById(@PathVariable Long id) {
-        ReportDTO reportDTO = monthlySchedulingService.getMonthlyReportById(id);
-        if (reportDTO == null) {
-            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+    // One page of the listing, newest first; pass the returned nextCursor to get the following page
+    @GetMapping("/monthly-reports/page")
+    public ResponseEntity<ReportPage<ReportDTO>> getReportPage(ReportListFilter filter) {
+        try {
+            return ResponseEntity.ok(reportListingService.listReports("stored_reports_monthly", filter));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            log.error("Error fetching monthly reports page", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
-        HttpHeaders headers = new HttpHeaders();
-        headers.add(HttpHeaders.CONTENT_TYPE, "application/pdf");
-        headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=report_" + id + ".pdf");
-        return new ResponseEntity<>(reportDTO.getPdfData(), headers, HttpStatus.OK);
+    }
+
+    @GetMapping("/monthly-reports/{id}")
+    public ResponseEntity<StreamingResponseBody> getReportById(@PathVariable Long id, @RequestHeader HttpHeaders headers) {
+        // ETag, 304 and byte ranges; the PDF is streamed, never loaded into a byte[]
+        return reportDownloadService.download("stored_reports_monthly", id, "attachment; filename=report_" + id + ".pdf", headers);
     }
 
     @PutMapping("/monthly-reports/review/{id}")
@@ -5,6 +5,9 @@ import ncpl.bms.reports.db.info.TableInfoService;
 import ncpl.bms.reports.model.dao.ReportTemplate;
 import ncpl.bms.reports.model.dto.GroupDTO;
 import ncpl.bms.reports.model.dto.ReportDTO;
+import ncpl.bms.reports.model.dto.ReportListFilter;
+import ncpl.bms.reports.model.dto.ReportMetadataDTO;
+import ncpl.bms.reports.model.dto.ReportPage;
 import ncpl.bms.reports.service.*;
 import ncpl.bms.reports.util.DateConverter;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -14,8 +17,13 @@ import java.util.*;
 
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import jakarta.servlet.http.HttpServletResponse;
 
+import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Collectors;
 
 @RestController
@@ -36,19 +44,42 @@ public class ReportsController {
     @Autowired
     private ReportTemplateService templateService;
 
-    @Autowired
-    private ReportDataService reportDataService;
-
     @Autowired
     private DateConverter dateConverter;
     @Autowired
     private GroupService groupService;
 
+    @Autowired
+    private ReportMetadataCache metadataCache;
+
+    @Autowired
+    private ReportJobService reportJobService;
+
+    @Autowired
+    private ReportRepository reportRepository;
+
+    @Autowired
+    private ReportListingService reportListingService;
+
+    @Autowired
+    private ReportDocumentCache documentCache;
+
+    @Autowired
+    private ReportStorage reportStorage;
+
+    @Autowired
+    private ReportDownloadService reportDownloadService;
+
 
     // Edit Template (Includes `units`)
     @PutMapping("editTemplate/{id}")
-    public ReportTemplate updateTemplate(@PathVariable Long id, @RequestBody ReportTemplate updatedTemplate) {
-        return templateService.updateTemplate(id, updatedTemplate);
+    public ResponseEntity<ReportTemplate> updateTemplate(@PathVariable Long id, @RequestBody ReportTemplate updatedTemplate) {
+        try {
+            return ResponseEntity.ok(templateService.updateTemplate(id, updatedTemplate));
+        } catch (IllegalArgumentException e) {
+            log.warn("Rejected template {} update: {}", id, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
     }
 
     // Delete Templates
@@ -77,9 +108,16 @@ public class ReportsController {
         Object paramsObject = requestBody.get("parameters");
         List<String> parameters = (paramsObject instanceof List) ? (List<String>) paramsObject : List.of();
         reportTemplate.setParameters(parameters);
+        Object aggregation = requestBody.get("aggregation");
+        reportTemplate.setAggregation(aggregation != null ? aggregation.toString() : null);
 
-        ReportTemplate savedTemplate = templateService.saveTemplate(reportTemplate);
-        return ResponseEntity.ok(savedTemplate);
+        try {
+            ReportTemplate savedTemplate = templateService.saveTemplate(reportTemplate);
+            return ResponseEntity.ok(savedTemplate);
+        } catch (IllegalArgumentException e) {
+            log.warn("Rejected new template: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
     }
 
     // Find Templates by Name
@@ -123,28 +161,118 @@ public class ReportsController {
 //        response.put("units", template.getUnits() != null ? template.getUnits() : ""); // Prevent null values
         response.put("additionalInfo", template.getAdditionalInfo() != null ? template.getAdditionalInfo() : ""); // Prevent null values
         response.put("report_group", template.getReport_group() != null ? template.getReport_group() : ""); // Prevent null values
+        response.put("aggregation", BucketAggregation.of(template.getAggregation()).name().toLowerCase(Locale.ROOT));
 
         return ResponseEntity.ok(response);
     }
 
-    // Export Report as PDF
+    // Export Report as PDF. Rendering runs on the async request executor, not the Tomcat thread, and the PDF
+    // goes to the client while it is rendered and is stored from the same pass
     @GetMapping("exportReport")
-    public void exportPdfReport(@RequestParam Long id,
-                                @RequestParam String fromDate,
-                                @RequestParam String toDate,
-                                @RequestParam("username") String username,
-                                @RequestParam String assignedTo,
-                                @RequestParam(required = false) String assigned_approver) throws Exception {
+    public ResponseEntity<StreamingResponseBody> exportPdfReport(@RequestParam Long id,
+                                                                 @RequestParam String fromDate,
+                                                                 @RequestParam String toDate,
+                                                                 @RequestParam("username") String username,
+                                                                 @RequestParam String assignedTo,
+                                                                 @RequestParam(required = false) String assigned_approver,
+                                                                 HttpServletResponse response) throws Exception {
 
         Long fromDateMills = dateConverter.stringToLong(fromDate);
         Long toDateMills = dateConverter.stringToLong(toDate);
-        ReportTemplate template = templateService.getById(id);
+        templateService.getById(id);
+        String approver = "null".equals(assigned_approver) ? null : assigned_approver;
+
+        StreamingResponseBody body = out -> {
+            try {
+                pdfService.generatePdf(id, fromDateMills.toString(), toDateMills.toString(), username, assignedTo, approver, out);
+            } catch (Exception e) {
+                // Once the PDF has started streaming the status is sent, so the error can only be logged
+                log.error("Export of template {} for {} failed, report not stored", id, username, e);
+                if (response.isCommitted()) {
+                    return;
+                }
+                throw e instanceof IOException ? (IOException) e : new IOException(e.getMessage(), e);
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_PDF)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + pdfService.getReportFileName(id) + "\"")
+                .body(body);
+    }
 
+    // Queue an export in the background; poll reportJobs/{jobId} and fetch reportJobs/{jobId}/result when it is DONE
+    @PostMapping("reportJobs")
+    public ResponseEntity<Map<String, Object>> submitReportJob(@RequestParam Long id,
+                                                               @RequestParam String fromDate,
+                                                               @RequestParam String toDate,
+                                                               @RequestParam("username") String username,
+                                                               @RequestParam String assignedTo,
+                                                               @RequestParam(required = false) String assigned_approver) throws Exception {
         if ("null".equals(assigned_approver)) {
             assigned_approver = null;
         }
+        try {
+            Long jobId = reportJobService.submit(id, dateConverter.stringToLong(fromDate), dateConverter.stringToLong(toDate),
+                    username, assignedTo, assigned_approver);
+            Map<String, Object> body = new HashMap<>();
+            body.put("jobId", jobId);
+            body.put("status", ReportJobService.QUEUED);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(body);
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of("error", e.getMessage()));
+        }
+    }
 
-        pdfService.generatePdf(id, fromDateMills.toString(), toDateMills.toString(), username, assignedTo, assigned_approver);
+    // Status, stage (FETCHING, RENDERING, STORING) and progress in percent
+    @GetMapping("reportJobs/{jobId}")
+    public ResponseEntity<Map<String, Object>> getReportJob(@PathVariable Long jobId) {
+        Map<String, Object> status = reportJobService.getStatus(jobId);
+        return status == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(status);
+    }
+
+    // The stored report of a finished job; 409 while it is still queued or running or when it failed
+    @GetMapping("reportJobs/{jobId}/result")
+    public ResponseEntity<StreamingResponseBody> getReportJobResult(@PathVariable Long jobId, @RequestHeader HttpHeaders headers) {
+        Map<String, Object> status = reportJobService.getStatus(jobId);
+        if (status == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        if (!ReportJobService.DONE.equals(status.get("status")) || status.get("reportId") == null) {
+            return new ResponseEntity<>(HttpStatus.CONFLICT);
+        }
+        return getReportById(((Number) status.get("reportId")).longValue(), headers);
+    }
+
+    // Hits, coalesced requests and disk usage of the rendered-document cache
+    @GetMapping("documentCache/stats")
+    public Map<String, Long> getDocumentCacheStats() {
+        return documentCache.getStats();
+    }
+
+    @PostMapping("documentCache/evict")
+    public void evictDocumentCache() {
+        documentCache.invalidateAll();
+    }
+
+    // Moves stored PDF blobs of all report tables into the file store; safe to run again after a failure
+    @PostMapping("reportStorage/migrate")
+    public ResponseEntity<Map<String, Integer>> migrateReportStorage(@RequestParam(defaultValue = "100") int batchSize) throws IOException {
+        if (batchSize < 1) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(reportStorage.migrateBlobsToFiles(batchSize));
+    }
+
+    // Hit/miss counters of the template and header-name cache used while rendering
+    @GetMapping("metadataCache/stats")
+    public Map<String, Map<String, Long>> getMetadataCacheStats() {
+        return metadataCache.getStats();
+    }
+
+    // Call after editing beckman_room_data so new header names show up before the TTL runs out
+    @PostMapping("metadataCache/evict")
+    public void evictMetadataCache() {
+        metadataCache.invalidateAll();
     }
 
     // Get All Reports
@@ -158,10 +286,23 @@ public class ReportsController {
         }
     }
 
+    // One page of the listing, newest first; pass the returned nextCursor to get the following page
+    @GetMapping("/reports/page")
+    public ResponseEntity<ReportPage<ReportDTO>> getReportPage(ReportListFilter filter) {
+        try {
+            return ResponseEntity.ok(reportListingService.listReports("stored_reports", filter));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            log.error("Error fetching reports page", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
     // Get Report by ID
     @GetMapping("/reports/{id}")
-    public ResponseEntity<byte[]> getReportById(@PathVariable Long id) {
-        ReportDTO reportDTO = pdfService.getReportById(id);
+    public ResponseEntity<StreamingResponseBody> getReportById(@PathVariable Long id, @RequestHeader HttpHeaders headers) {
+        ReportDTO reportDTO = pdfService.getReportSummaryById(id);
         if (reportDTO == null) {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         }
@@ -172,13 +313,8 @@ public class ReportsController {
             filename = filename == null ? "Report.pdf" : filename.replaceFirst("null_and_", "");
         }
 
-        HttpHeaders headers = new HttpHeaders();
-        headers.add(HttpHeaders.CONTENT_TYPE, "application/pdf");
-
-        // This sets filename in browser viewer
-        headers.add(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + filename + "\"");
-
-        return new ResponseEntity<>(reportDTO.getPdfData(), headers, HttpStatus.OK);
+        // This sets filename in browser viewer; ETag, 304 and byte ranges are handled by the download service
+        return reportDownloadService.download("stored_reports", id, "inline; filename=\"" + filename + "\"", headers);
     }
 
 
@@ -206,6 +342,30 @@ public class ReportsController {
         }
     }
 
+    // Reports of every kind assigned to the user for review and not reviewed yet, newest first
+    @GetMapping("/reports/pending-review")
+    public ResponseEntity<List<ReportMetadataDTO>> getPendingReview(@RequestParam String username,
+                                                                    @RequestParam(defaultValue = "100") int limit) {
+        try {
+            return ResponseEntity.ok(reportRepository.findPendingReview(username, limit));
+        } catch (Exception e) {
+            log.error("Error fetching reports pending review", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    // Reports of every kind waiting for the user's approval, newest first
+    @GetMapping("/reports/pending-approval")
+    public ResponseEntity<List<ReportMetadataDTO>> getPendingApproval(@RequestParam String username,
+                                                                      @RequestParam(defaultValue = "100") int limit) {
+        try {
+            return ResponseEntity.ok(reportRepository.findPendingApproval(username, limit));
+        } catch (Exception e) {
+            log.error("Error fetching reports pending approval", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
     // Get All Groups
     @GetMapping("/groups")
     public ResponseEntity<List<GroupDTO>> getGroups() {
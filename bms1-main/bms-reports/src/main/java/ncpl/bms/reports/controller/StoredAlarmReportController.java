@@ -1,6 +1,9 @@
 package ncpl.bms.reports.controller;
 
+import ncpl.bms.reports.model.dto.ReportListFilter;
+import ncpl.bms.reports.model.dto.ReportPage;
 import ncpl.bms.reports.model.dto.StoredAlarmReportDTO;
+import ncpl.bms.reports.service.ReportListingService;
 import ncpl.bms.reports.service.StoredAlarmReportService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
@@ -16,6 +19,9 @@ public class StoredAlarmReportController {
     @Autowired
     private StoredAlarmReportService storedAlarmReportService;
 
+    @Autowired
+    private ReportListingService reportListingService;
+
     // List all stored alarm reports
     @GetMapping("/list")
     public ResponseEntity<List<StoredAlarmReportDTO>> listStoredAlarmReports() {
@@ -27,4 +33,17 @@ public class StoredAlarmReportController {
             return ResponseEntity.internalServerError().build();
         }
     }
+
+    // One page of the listing, newest first; "approved" selects reviewed or unreviewed reports
+    @GetMapping("/list/page")
+    public ResponseEntity<ReportPage<StoredAlarmReportDTO>> listStoredAlarmReportPage(ReportListFilter filter) {
+        try {
+            return ResponseEntity.ok(reportListingService.listAlarmReports(filter));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            e.printStackTrace();
+            return ResponseEntity.internalServerError().build();
+        }
+    }
 }
\ No newline at end of file
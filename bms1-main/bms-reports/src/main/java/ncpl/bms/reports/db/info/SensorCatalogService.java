@@ -0,0 +1,127 @@
+package ncpl.bms.reports.db.info;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Per-table, per-day row counts and min/max timestamps of the EMS_NEW_ source tables.
+ * A background job folds in rows newer than each table's watermark, so report generation can
+ * skip empty sensors with index lookups instead of COUNT(*) range scans.
+ */
+@Service
+@Slf4j
+public class SensorCatalogService implements CommandLineRunner {
+
+    private static final Timestamp EPOCH = Timestamp.valueOf("1900-01-01 00:00:00");
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TableInfoService tableInfoService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Override
+    public void run(String... args) {
+        jdbcTemplate.execute("IF NOT EXISTS (SELECT * FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = 'sensor_catalog') BEGIN " +
+                "CREATE TABLE sensor_catalog (table_name VARCHAR(128) NOT NULL, day DATE NOT NULL, row_count BIGINT NOT NULL, " +
+                "min_ts datetime2 NOT NULL, max_ts datetime2 NOT NULL, PRIMARY KEY (table_name, day)); END;");
+        jdbcTemplate.execute("IF NOT EXISTS (SELECT * FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = 'sensor_catalog_watermark') BEGIN " +
+                "CREATE TABLE sensor_catalog_watermark (table_name VARCHAR(128) NOT NULL PRIMARY KEY, last_ts datetime2 NOT NULL, " +
+                "updated_at datetime2 NOT NULL); END;");
+    }
+
+    @Scheduled(initialDelayString = "${report.catalog.initial-delay-ms:60000}", fixedDelayString = "${report.catalog.refresh-ms:300000}")
+    public void refresh() {
+        Map<String, Timestamp> watermarks = getWatermarks();
+        for (String table : tableInfoService.getTables()) {
+            try {
+                refreshTable(table, watermarks.getOrDefault(table, EPOCH));
+            } catch (Exception e) {
+                log.error("Sensor catalog refresh failed for {}: {}", table, e.getMessage());
+            }
+        }
+    }
+
+    private void refreshTable(String table, Timestamp watermark) {
+        Timestamp upper = jdbcTemplate.queryForObject(
+                "SELECT MAX(timestamp) FROM " + table + " WHERE timestamp > ?", Timestamp.class, watermark);
+        if (upper == null) {
+            return;
+        }
+
+        String mergeSql = "MERGE sensor_catalog AS c USING (" +
+                "SELECT CAST(timestamp AS date) AS day, COUNT(*) AS cnt, MIN(timestamp) AS min_ts, MAX(timestamp) AS max_ts " +
+                "FROM " + table + " WHERE timestamp > ? AND timestamp <= ? GROUP BY CAST(timestamp AS date)) AS s " +
+                "ON c.table_name = ? AND c.day = s.day " +
+                "WHEN MATCHED THEN UPDATE SET row_count = c.row_count + s.cnt, " +
+                "min_ts = CASE WHEN s.min_ts < c.min_ts THEN s.min_ts ELSE c.min_ts END, " +
+                "max_ts = CASE WHEN s.max_ts > c.max_ts THEN s.max_ts ELSE c.max_ts END " +
+                "WHEN NOT MATCHED THEN INSERT (table_name, day, row_count, min_ts, max_ts) VALUES (?, s.day, s.cnt, s.min_ts, s.max_ts);";
+        String watermarkSql = "MERGE sensor_catalog_watermark AS w USING (SELECT ? AS table_name) AS s " +
+                "ON w.table_name = s.table_name " +
+                "WHEN MATCHED THEN UPDATE SET last_ts = ?, updated_at = SYSDATETIME() " +
+                "WHEN NOT MATCHED THEN INSERT (table_name, last_ts, updated_at) VALUES (s.table_name, ?, SYSDATETIME());";
+        // One transaction, so a range is never counted without its watermark moving past it
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update(mergeSql, watermark, upper, table, table);
+            jdbcTemplate.update(watermarkSql, table, upper, upper);
+        });
+        log.debug("Sensor catalog for {} advanced to {}", table, upper);
+    }
+
+    public Map<String, Timestamp> getWatermarks() {
+        Map<String, Timestamp> watermarks = new HashMap<>();
+        try {
+            jdbcTemplate.query("SELECT table_name, last_ts FROM sensor_catalog_watermark",
+                    rs -> {
+                        watermarks.put(rs.getString("table_name"), rs.getTimestamp("last_ts"));
+                    });
+        } catch (Exception e) {
+            log.warn("Sensor catalog watermarks unavailable: {}", e.getMessage());
+        }
+        return watermarks;
+    }
+
+    /**
+     * Tables that may hold samples in [from, to]. Tables whose watermark is behind the range end are
+     * always included, since the catalog cannot rule them out yet.
+     */
+    public Set<String> getTablesWithData(List<String> tables, Timestamp from, Timestamp to) {
+        Set<String> withData = new HashSet<>();
+        try {
+            jdbcTemplate.query("SELECT DISTINCT table_name FROM sensor_catalog " +
+                            "WHERE day BETWEEN CAST(? AS date) AND CAST(? AS date) AND max_ts >= ? AND min_ts <= ?",
+                    rs -> {
+                        withData.add(rs.getString("table_name"));
+                    }, from, to, from, to);
+        } catch (Exception e) {
+            log.warn("Sensor catalog unavailable, reading every table: {}", e.getMessage());
+            return new HashSet<>(tables);
+        }
+
+        Map<String, Timestamp> watermarks = getWatermarks();
+        Set<String> result = new HashSet<>();
+        for (String table : tables) {
+            Timestamp watermark = watermarks.get(table);
+            if (withData.contains(table) || watermark == null || watermark.before(to)) {
+                result.add(table);
+            }
+        }
+        return result;
+    }
+}
@@ -2,7 +2,6 @@ package ncpl.bms.reports.db.info;
 
 import lombok.extern.slf4j.Slf4j;
 import ncpl.bms.reports.db.info.TableInfoRepository;
-import ncpl.bms.reports.service.ReportDataService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
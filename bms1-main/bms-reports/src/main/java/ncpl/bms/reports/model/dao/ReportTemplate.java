@@ -1,8 +1,11 @@
 package ncpl.bms.reports.model.dao;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
+import ncpl.bms.reports.model.dto.ParameterDescriptor;
 
 import java.io.*;
 import java.util.List;
@@ -31,9 +34,44 @@ public class ReportTemplate {
 
     private String roomName;
 
+    // Per-bucket reduction of the source samples: first, last, avg, min or max (null means last)
+    private String aggregation;
+
+    // Parsed parameters, built on first use; cached templates keep them, so parsing happens once per load
+    @Transient
+    @JsonIgnore
+    @Setter(AccessLevel.NONE)
+    private volatile List<ParameterDescriptor> parameterDescriptors;
+
     // Setter for List<String> -> byte[]
     public void setParameters(List<String> parameters) {
         this.parameters = serializeList(parameters);
+        this.parameterDescriptors = null;
+    }
+
+    public List<ParameterDescriptor> getParameterDescriptors() {
+        List<ParameterDescriptor> descriptors = parameterDescriptors;
+        if (descriptors == null) {
+            List<String> list = getParameters();
+            descriptors = list == null ? List.of() : list.stream().map(ParameterDescriptor::parse).toList();
+            parameterDescriptors = descriptors;
+        }
+        return descriptors;
+    }
+
+    // Detached copy sharing the parsed parameters, which are parsed here if they were not yet
+    public ReportTemplate copy() {
+        ReportTemplate copy = new ReportTemplate();
+        copy.id = id;
+        copy.name = name;
+        copy.parameters = parameters != null ? parameters.clone() : null;
+        copy.additionalInfo = additionalInfo;
+        copy.report_group = report_group;
+        copy.roomId = roomId;
+        copy.roomName = roomName;
+        copy.aggregation = aggregation;
+        copy.parameterDescriptors = getParameterDescriptors();
+        return copy;
     }
 
     // Getter for byte[] -> List<String>
@@ -0,0 +1,105 @@
+package ncpl.bms.reports.model.dto;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+
+/**
+ * One template parameter such as {@code EMS_NEW_X_From_20_To_25_Unit_C}, split once into the source
+ * table, the alarm range and the unit. Either bound may be missing; it is then infinite.
+ */
+@Getter
+@Slf4j
+public class ParameterDescriptor {
+
+    private static final String FROM = "_From_";
+    private static final String TO = "_To_";
+    private static final String UNIT = "_Unit_";
+
+    // The parameter as stored in the template
+    private final String parameter;
+    // Source table the values come from
+    private final String column;
+    private final double low;
+    private final double high;
+    // Empty when the parameter has no unit
+    private final String unit;
+
+    private ParameterDescriptor(String parameter, String column, double low, double high, String unit) {
+        this.parameter = parameter;
+        this.column = column;
+        this.low = low;
+        this.high = high;
+        this.unit = unit;
+    }
+
+    public static ParameterDescriptor parse(String parameter) {
+        int end = parameter.length();
+        for (String marker : new String[]{FROM, TO, UNIT}) {
+            int index = parameter.indexOf(marker);
+            if (index >= 0 && index < end) {
+                end = index;
+            }
+        }
+        String column = parameter.substring(0, end);
+        double low = parseBound(parameter, end, FROM, Double.NEGATIVE_INFINITY);
+        double high = parseBound(parameter, end, TO, Double.POSITIVE_INFINITY);
+
+        String unit = parseUnit(parameter, end);
+        return new ParameterDescriptor(parameter, column, low, high, unit);
+    }
+
+    // The text after the unit marker, up to a bound that follows it; empty when absent.
+    private static String parseUnit(String parameter, int from) {
+        int index = parameter.indexOf(UNIT, from);
+        if (index < 0) {
+            return "";
+        }
+        int start = index + UNIT.length();
+        int end = parameter.length();
+        for (String marker : new String[]{FROM, TO}) {
+            int next = parameter.indexOf(marker, start);
+            if (next >= 0 && next < end) {
+                end = next;
+            }
+        }
+        return parameter.substring(start, end).trim();
+    }
+
+    // The number after the marker, up to the next underscore; the default when absent or malformed.
+    private static double parseBound(String parameter, int from, String marker, double defaultValue) {
+        int index = parameter.indexOf(marker, from);
+        if (index < 0) {
+            return defaultValue;
+        }
+        int start = index + marker.length();
+        int end = parameter.indexOf('_', start);
+        String text = end < 0 ? parameter.substring(start) : parameter.substring(start, end);
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            log.warn("Invalid '{}' value in parameter: {}", marker, parameter);
+            return defaultValue;
+        }
+    }
+
+    public boolean hasRange() {
+        return low != Double.NEGATIVE_INFINITY && high != Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Column header for the PDF table: the display name from {@code headerNames} (falling back to the
+     * table name), the unit in brackets and the range on a second line when both bounds are set.
+     */
+    public String getHeader(Map<String, String> headerNames) {
+        String header = headerNames.getOrDefault(column, column);
+        if (!unit.isEmpty()) {
+            header += "(" + unit + ")";
+        }
+        if (hasRange()) {
+            header += String.format("\nRange: %.0f - %.0f", low, high);
+        }
+        return header;
+    }
+}
@@ -0,0 +1,22 @@
+package ncpl.bms.reports.model.dto;
+
+import lombok.Data;
+
+/**
+ * Query parameters of the paged report listings. Every filter is optional; {@code cursor} is the
+ * {@code nextCursor} of the previous page.
+ */
+@Data
+public class ReportListFilter {
+    // Approved for generated reports, reviewed for alarm reports
+    private Boolean approved;
+    private String reviewedBy;
+    private Long templateId;
+    // Part of the report name, e.g. a room
+    private String name;
+    // Generation time range in epoch millis, both inclusive
+    private Long from;
+    private Long to;
+    private String cursor;
+    private Integer limit;
+}
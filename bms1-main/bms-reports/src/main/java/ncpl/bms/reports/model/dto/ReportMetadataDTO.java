@@ -0,0 +1,28 @@
+package ncpl.bms.reports.model.dto;
+
+import lombok.Data;
+
+import java.sql.Timestamp;
+
+// One row of report_metadata; the PDF is fetched from the kind's own endpoint by sourceId.
+@Data
+public class ReportMetadataDTO {
+    private long id;
+    private String kind;
+    private long sourceId;
+    private Long templateId;
+    private String name;
+    private String fromDate;
+    private String toDate;
+    private String generatedBy;
+    private Timestamp generatedAt;
+    private String assignedReview;
+    private String reviewedBy;
+    private Timestamp reviewedAt;
+    private boolean approverRequired;
+    private String assignedApprover;
+    private String approvedBy;
+    private Timestamp approvedAt;
+    private String pdfHash;
+    private Long pdfSize;
+}
@@ -0,0 +1,20 @@
+package ncpl.bms.reports.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * One page of a report listing, newest first. {@code nextCursor} is null on the last page.
+ * {@code estimatedTotal} is exact when {@code totalExact} is set, otherwise a lower bound or the
+ * table's row count from the index statistics.
+ */
+@Getter
+@AllArgsConstructor
+public class ReportPage<T> {
+    private final List<T> items;
+    private final String nextCursor;
+    private final long estimatedTotal;
+    private final boolean totalExact;
+}
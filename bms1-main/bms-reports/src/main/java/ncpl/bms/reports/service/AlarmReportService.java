@@ -5,20 +5,21 @@ import com.lowagie.text.Font;
 import com.lowagie.text.Image;
 import com.lowagie.text.Rectangle;
 import com.lowagie.text.pdf.*;
-import java.io.ByteArrayInputStream;
 import lombok.extern.slf4j.Slf4j;
 import ncpl.bms.reports.model.dto.AlarmRecordDTO;
+import ncpl.bms.reports.util.LargeTableWriter;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.ClassPathResource;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 import java.awt.*;
 import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.sql.ResultSet;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -33,8 +34,28 @@ public class AlarmReportService {
     private JdbcTemplate jdbcTemplate;
     @Autowired
     private AuditReportService auditReportService;
+    @Autowired
+    private ReportPdfResources pdfResources;
+    @Autowired
+    private ReportStorage reportStorage;
+
+    @Autowired
+    private ReportRepository reportRepository;
+
+    @Autowired
+    private ReportStampService reportStampService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
 
     public List<AlarmRecordDTO> fetchAlarmLogs(long startMillis, long endMillis) {
+        List<AlarmRecordDTO> logs = new ArrayList<>();
+        forEachAlarmLog(startMillis, endMillis, logs::add);
+        return logs;
+    }
+
+    // Streams the alarm records of the range in timestamp order without collecting them.
+    private void forEachAlarmLog(long startMillis, long endMillis, Consumer<AlarmRecordDTO> consumer) {
         String sql = "SELECT " +
                 "r.[timestamp],"+
                 "r.[ackState], " +
@@ -50,7 +71,7 @@ public class AlarmReportService {
                 "WHERE r.[timestamp] BETWEEN ? AND ? " +
                 "ORDER BY r.[timestamp] ASC";
 
-        return jdbcTemplate.query(sql, new Object[]{startMillis, endMillis}, (ResultSet rs, int rowNum) -> {
+        jdbcTemplate.query(sql, (ResultSet rs) -> {
             AlarmRecordDTO dto = new AlarmRecordDTO();
             dto.setTimestamp(rs.getLong("timestamp"));
             dto.setSource(extractSourceName(rs.getString("source")));
@@ -60,8 +81,15 @@ public class AlarmReportService {
             dto.setNormalTime(rs.getLong("normalTime"));
             dto.setAckTime(rs.getLong("ackTime"));
             dto.setMessageText(extractMessageText(rs.getString("source")));
-            return dto;
-        });
+            consumer.accept(dto);
+        }, startMillis, endMillis);
+    }
+
+    private boolean hasAlarmLogs(long startMillis, long endMillis) {
+        String sql = "SELECT COUNT(*) FROM (SELECT TOP 1 r.[id] FROM [dbo].[alarmOrion_OrionAlarmRecord] r " +
+                "WHERE r.[timestamp] BETWEEN ? AND ?) x";
+        Integer found = jdbcTemplate.queryForObject(sql, Integer.class, startMillis, endMillis);
+        return found != null && found > 0;
     }
 
     private String extractSourceName(String fullSource) {
@@ -152,44 +180,21 @@ public class AlarmReportService {
     public void reviewAlarmReport(int reportId, String reviewer) throws Exception {
         String effectiveReviewer = (reviewer != null && !reviewer.trim().isEmpty()) ? reviewer : "Supervisor";
 
-        byte[] originalPdf = getStoredAlarmReportById(reportId);
-        if (originalPdf == null) throw new Exception("Report not found");
-
-        PdfReader reader = new PdfReader(new ByteArrayInputStream(originalPdf));
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        PdfStamper stamper = new PdfStamper(reader, outputStream);
-
-        String formattedDate = new SimpleDateFormat("dd-MMM-yyyy HH:mm:ss").format(new Date());
-        String reviewText = "Reviewed By: " + effectiveReviewer;
-        String generatedText = "Generated on: " + formattedDate;
-
-        BaseFont baseFont = BaseFont.createFont(BaseFont.HELVETICA, BaseFont.WINANSI, BaseFont.EMBEDDED);
-        Font font = new Font(baseFont, 9);
-
-        for (int i = 1; i <= reader.getNumberOfPages(); i++) {
-            PdfContentByte canvas = stamper.getOverContent(i);
-            Rectangle pageSize = reader.getPageSize(i);
-
-            float x = pageSize.getRight() + 200f; // Right margin (approx 36pt)
-            float y = pageSize.getBottom() + 40f; // A bit above the bottom
-
-            // "Reviewed By" line
-            ColumnText.showTextAligned(canvas, Element.ALIGN_RIGHT, new Phrase(reviewText, font), x, y, 0);
-
-            // "Generated on" line just below the "Reviewed By"
-            ColumnText.showTextAligned(canvas, Element.ALIGN_RIGHT, new Phrase(generatedText, font), x, y - 12f, 0);
-        }
-
-        stamper.close();
-        reader.close();
-
-        byte[] updatedPdf = outputStream.toByteArray();
+        // Only records the review; the stamp is drawn into the PDF when it is next downloaded
         long reviewTime = System.currentTimeMillis();
+        String sql = "UPDATE StoredAlarmReport SET reviewed_by = ?, review_date = ? WHERE id = ?";
+        Integer updated = transactionTemplate.execute(status -> {
+            int rows = reportRepository.update(ReportKind.ALARM, reportId, sql, effectiveReviewer, reviewTime, reportId);
+            if (rows > 0) {
+                reportStampService.addStamp(ReportKind.ALARM, reportId, ReportStampService.REVIEW, effectiveReviewer, reviewTime);
+            }
+            return rows;
+        });
+        if (updated == null || updated == 0) {
+            throw new Exception("Report not found");
+        }
 
-        String sql = "UPDATE StoredAlarmReport SET report_data = ?, reviewed_by = ?, review_date = ? WHERE id = ?";
-        jdbcTemplate.update(sql, updatedPdf, effectiveReviewer, reviewTime, reportId);
-
-        log.info("Alarm report reviewed by {} at {}", effectiveReviewer, formattedDate);
+        log.info("Alarm report reviewed by {} at {}", effectiveReviewer, new SimpleDateFormat("dd-MMM-yyyy HH:mm:ss").format(new Date(reviewTime)));
     }
 
     private PdfPTable createAlarmTable(Font headerFont) throws DocumentException {
@@ -215,9 +220,9 @@ public class AlarmReportService {
 
     public byte[] getStoredAlarmReportById(int reportId) {
         try {
-            String sql = "SELECT report_data FROM StoredAlarmReport WHERE id = ?";
+            String sql = "SELECT report_data, pdf_hash FROM StoredAlarmReport WHERE id = ?";
 
-            return jdbcTemplate.queryForObject(sql, new Object[]{reportId}, byte[].class);
+            return jdbcTemplate.queryForObject(sql, (rs, rowNum) -> reportStorage.read(rs, "report_data"), reportId);
         } catch (Exception e) {
             log.error("Error fetching stored alarm report from database", e);
             return null;
@@ -226,12 +231,13 @@ public class AlarmReportService {
 
     public void saveAlarmReportToDatabase(byte[] pdfBytes, String username) {
         try {
-            String sql = "INSERT INTO StoredAlarmReport (report_name, generated_on, report_data, generated_by) VALUES (?, ?, ?, ?)";
+            ReportStorage.StoredPdf pdf = reportStorage.store(pdfBytes);
+            String sql = "INSERT INTO StoredAlarmReport (report_name, generated_on, report_data, generated_by, pdf_hash, pdf_size) VALUES (?, ?, ?, ?, ?, ?)";
 
             String reportName = "Alarm_Report_" + new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
             Date now = new Date();
 
-            jdbcTemplate.update(sql, reportName, new java.sql.Timestamp(now.getTime()), pdfBytes, username);
+            reportRepository.insert(ReportKind.ALARM, sql, reportName, new java.sql.Timestamp(now.getTime()), pdf.getBlob(), username, pdf.getHash(), pdf.getSize());
 
             log.info("Alarm report saved by '{}' into StoredAlarmReport table.", username);
         } catch (Exception e) {
@@ -240,9 +246,7 @@ public class AlarmReportService {
     }
 
     public byte[] generateAlarmReportPdf(long startMillis, long endMillis, String username) {
-        List<AlarmRecordDTO> logs = fetchAlarmLogs(startMillis, endMillis);
-
-        if (logs == null || logs.isEmpty()) {
+        if (!hasAlarmLogs(startMillis, endMillis)) {
             throw new RuntimeException("No alarm records found in the selected time range.");
         }
 
@@ -257,90 +261,93 @@ public class AlarmReportService {
                 Font titleFontBold = new Font(Font.HELVETICA, 18, Font.BOLD);
                 Font titleFont = new Font(Font.HELVETICA, 12);
                 Font footerFont = new Font(Font.HELVETICA, 9);
-                Image logo;
-
-                {
-                    try {
-                        logo = Image.getInstance(new ClassPathResource("static/images/logo1.png").getInputStream().readAllBytes());
-                        logo.scaleToFit(90, 40);
-                    } catch (IOException e) {
-                        log.error("Logo load error", e);
-                        logo = null;
-                    }
-                }
+                // Everything but the page number is the same on every page, drawn once into this template
+                PdfTemplate furniture;
 
                 @Override
                 public void onEndPage(PdfWriter writer, Document document) {
                     try {
                         PdfContentByte cb = writer.getDirectContent();
+                        if (furniture == null) {
+                            furniture = buildFurniture(cb, document);
+                        }
+                        cb.addTemplate(furniture, 0, 0);
 
-                        // Header table with logo, title, and empty right cell
-                        PdfPTable headerTable = new PdfPTable(3);
-                        headerTable.setWidths(new float[]{2f, 6f, 2f});
-                        headerTable.setTotalWidth(document.getPageSize().getWidth() - document.leftMargin() - document.rightMargin());
-                        headerTable.setLockedWidth(true);
+                        ColumnText.showTextAligned(cb, Element.ALIGN_CENTER,
+                                new Phrase("Page " + writer.getPageNumber(), footerFont),
+                                (document.right() + document.left()) / 2, 30, 0);
 
-                        PdfPCell logoCell = new PdfPCell();
-                        logoCell.setBorder(Rectangle.NO_BORDER);
-                        if (logo != null) {
-                            logoCell.addElement(logo);
-                        }
-                        headerTable.addCell(logoCell);
+                    } catch (Exception e) {
+                        log.error("Error in header/footer rendering", e);
+                    }
+                }
 
-                        PdfPCell titleCell = new PdfPCell(new Phrase("Alarm Report of EMS System", titleFontBold));
-                        titleCell.setBorder(Rectangle.NO_BORDER);
-                        titleCell.setHorizontalAlignment(Element.ALIGN_CENTER);
-                        titleCell.setVerticalAlignment(Element.ALIGN_MIDDLE);
-                        headerTable.addCell(titleCell);
+                private PdfTemplate buildFurniture(PdfContentByte cb, Document document) throws DocumentException {
+                    PdfTemplate template = cb.createTemplate(document.getPageSize().getWidth(), document.getPageSize().getHeight());
 
-                        PdfPCell emptyCell = new PdfPCell(new Phrase(""));
-                        emptyCell.setBorder(Rectangle.NO_BORDER);
-                        headerTable.addCell(emptyCell);
+                    // Header table with logo, title, and empty right cell
+                    PdfPTable headerTable = new PdfPTable(3);
+                    headerTable.setWidths(new float[]{2f, 6f, 2f});
+                    headerTable.setTotalWidth(document.getPageSize().getWidth() - document.leftMargin() - document.rightMargin());
+                    headerTable.setLockedWidth(true);
 
-                        headerTable.writeSelectedRows(0, -1, document.leftMargin(), document.getPageSize().getHeight() - 20, cb);
+                    PdfPCell logoCell = new PdfPCell();
+                    logoCell.setBorder(Rectangle.NO_BORDER);
+                    Image logo = pdfResources.getLogo();
+                    if (logo != null) {
+                        logo.scaleToFit(90, 40);
+                        logoCell.addElement(logo);
+                    }
+                    headerTable.addCell(logoCell);
 
-                        // Metadata table (Start/End Date & Time)
-                        PdfPTable metaTable = new PdfPTable(2);
-                        metaTable.setWidths(new float[]{1, 1});
-                        metaTable.setTotalWidth(document.getPageSize().getWidth() - document.leftMargin() - document.rightMargin());
-                        metaTable.setLockedWidth(true);
+                    PdfPCell titleCell = new PdfPCell(new Phrase("Alarm Report of EMS System", titleFontBold));
+                    titleCell.setBorder(Rectangle.NO_BORDER);
+                    titleCell.setHorizontalAlignment(Element.ALIGN_CENTER);
+                    titleCell.setVerticalAlignment(Element.ALIGN_MIDDLE);
+                    headerTable.addCell(titleCell);
 
-                        Font infoFont = new Font(Font.HELVETICA, 9);
-                        String startDate = formatEpoch(startMillis);
-                        String endDate = formatEpoch(endMillis);
+                    PdfPCell emptyCell = new PdfPCell(new Phrase(""));
+                    emptyCell.setBorder(Rectangle.NO_BORDER);
+                    headerTable.addCell(emptyCell);
 
-                        PdfPCell startCell = createLeftAlignedCell(
-                                "Start Date: " + startDate.split(" ")[0] + "\nStart Time: " + startDate.split(" ")[1], infoFont);
-                        PdfPCell endCell = createRightAlignedCell(
-                                "End Date: " + endDate.split(" ")[0] + "\nEnd Time: " + endDate.split(" ")[1], infoFont);
+                    headerTable.writeSelectedRows(0, -1, document.leftMargin(), document.getPageSize().getHeight() - 20, template);
 
-                        startCell.setBorder(Rectangle.NO_BORDER);
-                        endCell.setBorder(Rectangle.NO_BORDER);
+                    // Metadata table (Start/End Date & Time)
+                    PdfPTable metaTable = new PdfPTable(2);
+                    metaTable.setWidths(new float[]{1, 1});
+                    metaTable.setTotalWidth(document.getPageSize().getWidth() - document.leftMargin() - document.rightMargin());
+                    metaTable.setLockedWidth(true);
 
-                        metaTable.addCell(startCell);
-                        metaTable.addCell(endCell);
+                    Font infoFont = new Font(Font.HELVETICA, 9);
+                    String startDate = formatEpoch(startMillis);
+                    String endDate = formatEpoch(endMillis);
 
-                        metaTable.writeSelectedRows(0, -1, document.leftMargin(), document.getPageSize().getHeight() - 60, cb);
+                    PdfPCell startCell = createLeftAlignedCell(
+                            "Start Date: " + startDate.split(" ")[0] + "\nStart Time: " + startDate.split(" ")[1], infoFont);
+                    PdfPCell endCell = createRightAlignedCell(
+                            "End Date: " + endDate.split(" ")[0] + "\nEnd Time: " + endDate.split(" ")[1], infoFont);
 
-                        // Footer
-                        String generatedBy = "Generated By: " + username;
-                        String generatedOn = "Generated on: " + new SimpleDateFormat("dd-MMM-yyyy HH:mm:ss").format(new Date());
+                    startCell.setBorder(Rectangle.NO_BORDER);
+                    endCell.setBorder(Rectangle.NO_BORDER);
 
-                        ColumnText.showTextAligned(cb, Element.ALIGN_LEFT,
-                                new Phrase(generatedBy, footerFont),
-                                document.leftMargin(), 40, 0);
+                    metaTable.addCell(startCell);
+                    metaTable.addCell(endCell);
 
-                        ColumnText.showTextAligned(cb, Element.ALIGN_LEFT,
-                                new Phrase(generatedOn, footerFont),
-                                document.leftMargin(), 30, 0);
+                    metaTable.writeSelectedRows(0, -1, document.leftMargin(), document.getPageSize().getHeight() - 60, template);
 
-                        ColumnText.showTextAligned(cb, Element.ALIGN_CENTER,
-                                new Phrase("Page " + writer.getPageNumber(), footerFont),
-                                (document.right() + document.left()) / 2, 30, 0);
+                    // Footer
+                    String generatedBy = "Generated By: " + username;
+                    String generatedOn = "Generated on: " + new SimpleDateFormat("dd-MMM-yyyy HH:mm:ss").format(new Date());
 
-                    } catch (Exception e) {
-                        log.error("Error in header/footer rendering", e);
-                    }
+                    ColumnText.showTextAligned(template, Element.ALIGN_LEFT,
+                            new Phrase(generatedBy, footerFont),
+                            document.leftMargin(), 40, 0);
+
+                    ColumnText.showTextAligned(template, Element.ALIGN_LEFT,
+                            new Phrase(generatedOn, footerFont),
+                            document.leftMargin(), 30, 0);
+
+                    return template;
                 }
             });
 
@@ -356,8 +363,10 @@ public class AlarmReportService {
             document.add(metaTable);
 
             PdfPTable table = createAlarmTable(headerFont);
+            // Rows go out in batches as they are read, a busy quarter never sits in memory at once
+            LargeTableWriter tableWriter = new LargeTableWriter(document, table);
 
-            for (AlarmRecordDTO log : logs) {
+            forEachAlarmLog(startMillis, endMillis, log -> {
                 table.addCell(createCell(formatEpoch(log.getTimestamp()), cellFont));
 //                table.addCell(createCell(formatEpoch(log.getNormalTime()), cellFont));
                 table.addCell(createCell(log.getSource(), cellFont));
@@ -365,9 +374,14 @@ public class AlarmReportService {
                 table.addCell(createCell(log.getMessageText(), cellFont)); // Corrected line
                 table.addCell(createCell(getAlarmClassLabel(log.getAlarmClass()), cellFont));
                 table.addCell(createCell(formatEpoch(log.getTimeOfLastAlarm()), cellFont));
-            }
+                try {
+                    tableWriter.rowAdded();
+                } catch (DocumentException e) {
+                    throw new ExceptionConverter(e);
+                }
+            });
 
-            document.add(table);
+            tableWriter.finish();
 
             PdfPTable footerTable = new PdfPTable(3);
             footerTable.setWidthPercentage(100);
@@ -16,8 +16,9 @@ import org.springframework.jdbc.core.JdbcTemplate;
 import com.lowagie.text.pdf.PdfPageEventHelper;
 import com.lowagie.text.pdf.PdfTemplate;
 import com.lowagie.text.pdf.PdfContentByte;
-import org.springframework.core.io.ClassPathResource;
+import ncpl.bms.reports.util.LargeTableWriter;
 import java.awt.*;
+import java.sql.ResultSet;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.time.LocalDateTime;
@@ -34,6 +35,9 @@ public class AuditReportService {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private ReportPdfResources pdfResources;
+
     private static final Logger logger = LoggerFactory.getLogger(AuditReportService.class);
 
     // Log user login action
@@ -183,7 +187,7 @@ public class AuditReportService {
 
         try {
             PdfWriter writer = PdfWriter.getInstance(document, out);
-            writer.setPageEvent(new AuditFooterEvent());
+            writer.setPageEvent(new AuditFooterEvent(pdfResources.getHelvetica()));
             document.open();
 // === Header Section (Title + Logo) ===
             PdfPTable headerTop = new PdfPTable(2);
@@ -203,12 +207,12 @@ public class AuditReportService {
             PdfPCell logoCell = new PdfPCell();
             logoCell.setBorder(Rectangle.NO_BORDER);
             logoCell.setHorizontalAlignment(Element.ALIGN_RIGHT);
-            try {
-                Image logo = Image.getInstance(new ClassPathResource("static/images/logo1.png").getURL());
+            Image logo = pdfResources.getLogo();
+            if (logo != null) {
                 logo.scaleToFit(80, 50);
                 logo.setAlignment(Image.ALIGN_RIGHT);
                 logoCell.addElement(logo);
-            } catch (Exception e) {
+            } else {
                 logoCell.addElement(new Phrase("Logo"));
             }
             headerTop.addCell(logoCell);
@@ -246,17 +250,18 @@ public class AuditReportService {
             headerCell.setPhrase(new Phrase("Timestamp", headerFont)); table.addCell(headerCell);
             headerCell.setPhrase(new Phrase("Username", headerFont));  table.addCell(headerCell);
             headerCell.setPhrase(new Phrase("Activity", headerFont));    table.addCell(headerCell);
+            table.setHeaderRows(1);
 
             Font cellFont = FontFactory.getFont(FontFactory.HELVETICA, 9);
             DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
             long fromMillis = convertToMillis(fromDateStr);
             long toMillis = convertToMillis(toDateStr);
-            String sql = "SELECT * FROM audit_report WHERE timestamp BETWEEN ? AND ? ORDER BY timestamp DESC";
-            List<Map<String, Object>> auditLogs = jdbcTemplate.queryForList(sql, fromMillis, toMillis);
-
-            for (Map<String, Object> log : auditLogs) {
-                Long timestampMillis = (Long) log.get("timestamp");
+            String sql = "SELECT timestamp, username, action FROM audit_report WHERE timestamp BETWEEN ? AND ? ORDER BY timestamp DESC";
+            // Rows are laid out in batches straight from the result set
+            LargeTableWriter tableWriter = new LargeTableWriter(document, table);
+            jdbcTemplate.query(sql, (ResultSet rs) -> {
+                long timestampMillis = rs.getLong("timestamp");
                 LocalDateTime dateTime = LocalDateTime.ofInstant(
                         new java.util.Date(timestampMillis).toInstant(),
                         ZoneId.systemDefault()
@@ -264,8 +269,8 @@ public class AuditReportService {
                 String formattedDate = dateTime.format(formatter);
 
                 PdfPCell cell1 = new PdfPCell(new Phrase(formattedDate, cellFont));
-                PdfPCell cell2 = new PdfPCell(new Phrase((String) log.get("username"), cellFont));
-                PdfPCell cell3 = new PdfPCell(new Phrase((String) log.get("action"), cellFont));
+                PdfPCell cell2 = new PdfPCell(new Phrase(rs.getString("username"), cellFont));
+                PdfPCell cell3 = new PdfPCell(new Phrase(rs.getString("action"), cellFont));
 
                 for (PdfPCell cell : List.of(cell1, cell2, cell3)) {
                     cell.setHorizontalAlignment(Element.ALIGN_CENTER);
@@ -273,9 +278,14 @@ public class AuditReportService {
                     cell.setPadding(5f);
                     table.addCell(cell);
                 }
-            }
+                try {
+                    tableWriter.rowAdded();
+                } catch (DocumentException e) {
+                    throw new ExceptionConverter(e);
+                }
+            }, fromMillis, toMillis);
 
-            document.add(table);
+            tableWriter.finish();
             document.close();
 
         } catch (Exception e) {
@@ -287,16 +297,15 @@ public class AuditReportService {
 
     private static class AuditFooterEvent extends PdfPageEventHelper {
         private PdfTemplate totalPageTemplate;
-        private BaseFont baseFont;
+        private final BaseFont baseFont;
+
+        AuditFooterEvent(BaseFont baseFont) {
+            this.baseFont = baseFont;
+        }
 
         @Override
         public void onOpenDocument(PdfWriter writer, Document document) {
             totalPageTemplate = writer.getDirectContent().createTemplate(50, 50);
-            try {
-                baseFont = BaseFont.createFont(BaseFont.HELVETICA, BaseFont.WINANSI, BaseFont.NOT_EMBEDDED);
-            } catch (Exception e) {
-                throw new RuntimeException(e);
-            }
         }
 
         @Override
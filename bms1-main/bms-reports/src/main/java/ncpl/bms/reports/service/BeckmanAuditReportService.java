@@ -8,18 +8,19 @@ package ncpl.bms.reports.service;
     import com.lowagie.text.pdf.*;
         import lombok.extern.slf4j.Slf4j;
     import ncpl.bms.reports.model.dto.AuditLogDTO;
+    import ncpl.bms.reports.util.LargeTableWriter;
     import org.springframework.beans.factory.annotation.Autowired;
-    import org.springframework.core.io.ClassPathResource;
     import org.springframework.jdbc.core.JdbcTemplate;
     import org.springframework.stereotype.Service;
 
     import java.awt.*;
         import java.io.ByteArrayOutputStream;
-    import java.io.IOException;
     import java.sql.ResultSet;
     import java.text.SimpleDateFormat;
+    import java.util.ArrayList;
     import java.util.Date;
     import java.util.List;
+    import java.util.function.Consumer;
 @Service
 @Slf4j
 public class BeckmanAuditReportService {
@@ -27,12 +28,28 @@ public class BeckmanAuditReportService {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private ReportPdfResources pdfResources;
+
+    @Autowired
+    private ReportStorage reportStorage;
+
+    @Autowired
+    private ReportRepository reportRepository;
+
     public List<AuditLogDTO> fetchAuditLogs(String startDate, String endDate) {
+        List<AuditLogDTO> logs = new ArrayList<>();
+        forEachAuditLog(startDate, endDate, logs::add);
+        return logs;
+    }
+
+    // Streams the audit history of the range in timestamp order without collecting it.
+    private void forEachAuditLog(String startDate, String endDate, Consumer<AuditLogDTO> consumer) {
         String query = "SELECT [TIMESTAMP], [OPERATION], [TARGET], [SLOTNAME], [OLDVALUE], [VALUE], [USERNAME] " +
                 "FROM[EMS_NEW_AUDITHISTORY] " +
                 "WHERE [TIMESTAMP] BETWEEN ? AND ? ORDER BY [TIMESTAMP] ASC";
 
-        return jdbcTemplate.query(query, new Object[]{startDate, endDate}, (ResultSet rs, int rowNum) -> {
+        jdbcTemplate.query(query, (ResultSet rs) -> {
             AuditLogDTO dto = new AuditLogDTO();
             dto.setTimestamp(rs.getString("TIMESTAMP"));
             dto.setOperation(rs.getString("OPERATION"));
@@ -41,14 +58,22 @@ public class BeckmanAuditReportService {
             dto.setOldValue(rs.getString("OLDVALUE"));
             dto.setValue(rs.getString("VALUE"));
             dto.setUserName(rs.getString("USERNAME"));
-            return dto;
-        });
+            consumer.accept(dto);
+        }, startDate, endDate);
+    }
+
+    private boolean hasAuditLogs(String startDate, String endDate) {
+        String query = "SELECT COUNT(*) FROM (SELECT TOP 1 [TIMESTAMP] FROM [EMS_NEW_AUDITHISTORY] " +
+                "WHERE [TIMESTAMP] BETWEEN ? AND ?) x";
+        Integer found = jdbcTemplate.queryForObject(query, Integer.class, startDate, endDate);
+        return found != null && found > 0;
     }
 
     public void saveAuditReportPdf(byte[] pdfBytes, String startDate, String endDate) {
         try {
             if (pdfBytes != null && pdfBytes.length > 0) {
-                String sql = "INSERT INTO StoredAuditReport (report_name, generated_on, report_data) VALUES (?, ?, ?)";
+                ReportStorage.StoredPdf pdf = reportStorage.store(pdfBytes);
+                String sql = "INSERT INTO StoredAuditReport (report_name, generated_on, report_data, pdf_hash, pdf_size) VALUES (?, ?, ?, ?, ?)";
 
                 SimpleDateFormat inputFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
                 SimpleDateFormat outputFormat = new SimpleDateFormat("dd-MMM-yyyy");
@@ -59,7 +84,7 @@ public class BeckmanAuditReportService {
                 String reportName = "Audit_Report_" + formattedStart + "_to_" + formattedEnd + ".pdf";
                 Date now = new Date();
 
-                jdbcTemplate.update(sql, reportName, new java.sql.Timestamp(now.getTime()), pdfBytes);
+                reportRepository.insert(ReportKind.AUDIT, sql, reportName, new java.sql.Timestamp(now.getTime()), pdf.getBlob(), pdf.getHash(), pdf.getSize());
                 log.info("Audit report saved with name: {}", reportName);
             } else {
                 log.warn("Generated PDF is empty. Not saving to DB.");
@@ -71,8 +96,8 @@ public class BeckmanAuditReportService {
 
     public byte[] getStoredAuditReportById(int reportId) {
         try {
-            String sql = "SELECT report_data FROM StoredAuditReport WHERE id = ?";
-            return jdbcTemplate.queryForObject(sql, new Object[]{reportId}, byte[].class);
+            String sql = "SELECT report_data, pdf_hash FROM StoredAuditReport WHERE id = ?";
+            return jdbcTemplate.queryForObject(sql, (rs, rowNum) -> reportStorage.read(rs, "report_data"), reportId);
         } catch (Exception e) {
             log.error("Error fetching stored audit report from database, ID: " + reportId, e);
             return null;
@@ -99,9 +124,7 @@ public class BeckmanAuditReportService {
     }
 
     public byte[] generateAuditReportPdf(String startDate, String endDate) {
-        List<AuditLogDTO> logs = fetchAuditLogs(startDate, endDate);
-
-        if (logs.isEmpty()) {
+        if (!hasAuditLogs(startDate, endDate)) {
             throw new RuntimeException("No audit logs found between the selected dates.");
         }
 
@@ -110,7 +133,8 @@ public class BeckmanAuditReportService {
             PdfWriter writer = PdfWriter.getInstance(document, out);
 
             writer.setPageEvent(new PdfPageEventHelper() {
-                Image logo = null;
+                // Everything but the page number is the same on every page, drawn once into this template
+                PdfTemplate furniture;
                 Font titleFont = new Font(Font.HELVETICA, 16, Font.BOLD);
                 Font dateFont = new Font(Font.HELVETICA, 11);
                 Font footerFont = new Font(Font.HELVETICA, 9);
@@ -119,91 +143,94 @@ public class BeckmanAuditReportService {
                 public void onEndPage(PdfWriter writer, Document document) {
                     try {
                         PdfContentByte cb = writer.getDirectContent();
+                        if (furniture == null) {
+                            furniture = buildFurniture(cb, document);
+                        }
+                        cb.addTemplate(furniture, 0, 0);
 
-                        // Header
-                        PdfPTable headerTable = new PdfPTable(1); // Only 1 column to stack logo and title
-                        headerTable.setTotalWidth(document.getPageSize().getWidth() - document.leftMargin() - document.rightMargin());
-                        headerTable.setLockedWidth(true);
+                        String pageNumber = "Page " + writer.getPageNumber();
+                        ColumnText.showTextAligned(cb, Element.ALIGN_CENTER, new Phrase(pageNumber, footerFont), (document.right() + document.left()) / 2, 30, 0);
 
-// -- Logo Row --
-                        PdfPCell logoCell = new PdfPCell();
-                        logoCell.setBorder(Rectangle.NO_BORDER);
-                        logoCell.setHorizontalAlignment(Element.ALIGN_LEFT);
-                        logoCell.setVerticalAlignment(Element.ALIGN_MIDDLE);
-
-                        if (logo == null) {
-                            try {
-                                logo = Image.getInstance(new ClassPathResource("static/images/logo1.png").getURL());
-                                logo.scaleToFit(100, 50);
-                            } catch (IOException e) {
-                                log.error("Error loading logo image", e);
-                            }
-                        }
+                    } catch (Exception e) {
+                        log.error("Header/footer generation error", e);
+                    }
+                }
 
-                        if (logo != null) {
-                            logo.setAlignment(Image.ALIGN_LEFT);
-                            logoCell.addElement(logo);
-                        }
+                private PdfTemplate buildFurniture(PdfContentByte cb, Document document) throws DocumentException {
+                    PdfTemplate template = cb.createTemplate(document.getPageSize().getWidth(), document.getPageSize().getHeight());
+
+                    // Header
+                    PdfPTable headerTable = new PdfPTable(1); // Only 1 column to stack logo and title
+                    headerTable.setTotalWidth(document.getPageSize().getWidth() - document.leftMargin() - document.rightMargin());
+                    headerTable.setLockedWidth(true);
+
+// -- Logo Row --
+                    PdfPCell logoCell = new PdfPCell();
+                    logoCell.setBorder(Rectangle.NO_BORDER);
+                    logoCell.setHorizontalAlignment(Element.ALIGN_LEFT);
+                    logoCell.setVerticalAlignment(Element.ALIGN_MIDDLE);
+
+                    Image logo = pdfResources.getLogo();
+                    if (logo != null) {
+                        logo.scaleToFit(100, 50);
+                        logo.setAlignment(Image.ALIGN_LEFT);
+                        logoCell.addElement(logo);
+                    }
 
-                        headerTable.addCell(logoCell);
+                    headerTable.addCell(logoCell);
 
 // -- Title Row --
-                        PdfPCell titleCell = new PdfPCell();
-                        titleCell.setBorder(Rectangle.NO_BORDER);
-                        titleCell.setPaddingTop(10f);
-                        titleCell.setPaddingBottom(10f);
+                    PdfPCell titleCell = new PdfPCell();
+                    titleCell.setBorder(Rectangle.NO_BORDER);
+                    titleCell.setPaddingTop(10f);
+                    titleCell.setPaddingBottom(10f);
 
-                        Paragraph titlePara = new Paragraph("Audit Report of EMS System", titleFont);
-                        titlePara.setAlignment(Element.ALIGN_CENTER);
+                    Paragraph titlePara = new Paragraph("Audit Report of EMS System", titleFont);
+                    titlePara.setAlignment(Element.ALIGN_CENTER);
 
-                        titleCell.addElement(titlePara);
-                        headerTable.addCell(titleCell);
+                    titleCell.addElement(titlePara);
+                    headerTable.addCell(titleCell);
 
 // -- Write the table to the PDF
-                        headerTable.writeSelectedRows(0, -1, document.leftMargin(), document.getPageSize().getHeight() - 30, cb);
-
-                        // Date Table
-                        PdfPTable dateTable = new PdfPTable(2);
-                        dateTable.setWidths(new float[]{1f, 1f});
-                        dateTable.setTotalWidth(document.getPageSize().getWidth() - document.leftMargin() - document.rightMargin());
-                        dateTable.setLockedWidth(true);
-
-                        String formattedStart = formatDate(startDate);
-                        String formattedEnd = formatDate(endDate);
-
-                        PdfPCell leftCell = new PdfPCell();
-                        leftCell.setBorder(Rectangle.NO_BORDER);
-                        leftCell.setPaddingBottom(5);
-                        leftCell.addElement(new Paragraph("Start Date: " + formattedStart.split(" ")[0], dateFont));
-                        leftCell.addElement(new Paragraph("Start Time: " + formattedStart.split(" ")[1], dateFont));
-
-                        PdfPCell rightCell = new PdfPCell();
-                        rightCell.setBorder(Rectangle.NO_BORDER);
-                        rightCell.setPaddingBottom(5);
-                        rightCell.setHorizontalAlignment(Element.ALIGN_RIGHT);
-
-                        Paragraph endDatePara = new Paragraph("End Date: " + formattedEnd.split(" ")[0], dateFont);
-                        endDatePara.setAlignment(Element.ALIGN_RIGHT);
-                        Paragraph endTimePara = new Paragraph("End Time: " + formattedEnd.split(" ")[1], dateFont);
-                        endTimePara.setAlignment(Element.ALIGN_RIGHT);
-
-                        rightCell.addElement(endDatePara);
-                        rightCell.addElement(endTimePara);
-
-                        dateTable.addCell(leftCell);
-                        dateTable.addCell(rightCell);
-                        dateTable.writeSelectedRows(0, -1, document.leftMargin(), document.getPageSize().getHeight() - 120, cb);
-
-                        // Footer
-                        String generatedOn = "Generated on: " + new SimpleDateFormat("dd-MMM-yyyy HH:mm:ss").format(new Date());
-                        String pageNumber = "Page " + writer.getPageNumber();
+                    headerTable.writeSelectedRows(0, -1, document.leftMargin(), document.getPageSize().getHeight() - 30, template);
 
-                        ColumnText.showTextAligned(cb, Element.ALIGN_LEFT, new Phrase(generatedOn, footerFont), document.leftMargin(), 30, 0);
-                        ColumnText.showTextAligned(cb, Element.ALIGN_CENTER, new Phrase(pageNumber, footerFont), (document.right() + document.left()) / 2, 30, 0);
+                    // Date Table
+                    PdfPTable dateTable = new PdfPTable(2);
+                    dateTable.setWidths(new float[]{1f, 1f});
+                    dateTable.setTotalWidth(document.getPageSize().getWidth() - document.leftMargin() - document.rightMargin());
+                    dateTable.setLockedWidth(true);
 
-                    } catch (Exception e) {
-                        log.error("Header/footer generation error", e);
-                    }
+                    String formattedStart = formatDate(startDate);
+                    String formattedEnd = formatDate(endDate);
+
+                    PdfPCell leftCell = new PdfPCell();
+                    leftCell.setBorder(Rectangle.NO_BORDER);
+                    leftCell.setPaddingBottom(5);
+                    leftCell.addElement(new Paragraph("Start Date: " + formattedStart.split(" ")[0], dateFont));
+                    leftCell.addElement(new Paragraph("Start Time: " + formattedStart.split(" ")[1], dateFont));
+
+                    PdfPCell rightCell = new PdfPCell();
+                    rightCell.setBorder(Rectangle.NO_BORDER);
+                    rightCell.setPaddingBottom(5);
+                    rightCell.setHorizontalAlignment(Element.ALIGN_RIGHT);
+
+                    Paragraph endDatePara = new Paragraph("End Date: " + formattedEnd.split(" ")[0], dateFont);
+                    endDatePara.setAlignment(Element.ALIGN_RIGHT);
+                    Paragraph endTimePara = new Paragraph("End Time: " + formattedEnd.split(" ")[1], dateFont);
+                    endTimePara.setAlignment(Element.ALIGN_RIGHT);
+
+                    rightCell.addElement(endDatePara);
+                    rightCell.addElement(endTimePara);
+
+                    dateTable.addCell(leftCell);
+                    dateTable.addCell(rightCell);
+                    dateTable.writeSelectedRows(0, -1, document.leftMargin(), document.getPageSize().getHeight() - 120, template);
+
+                    // Footer
+                    String generatedOn = "Generated on: " + new SimpleDateFormat("dd-MMM-yyyy HH:mm:ss").format(new Date());
+
+                    ColumnText.showTextAligned(template, Element.ALIGN_LEFT, new Phrase(generatedOn, footerFont), document.leftMargin(), 30, 0);
+                    return template;
                 }
 
                 private String formatDate(String raw) {
@@ -237,8 +264,10 @@ public class BeckmanAuditReportService {
                 table.addCell(cell);
             }
             table.setHeaderRows(1);
+            // Rows go out in batches as they are read instead of one table holding every cell
+            LargeTableWriter tableWriter = new LargeTableWriter(document, table);
 
-            for (AuditLogDTO log : logs) {
+            forEachAuditLog(startDate, endDate, log -> {
                 table.addCell(createCenterCell(formatTimestamp(log.getTimestamp()), cellFont));
                 table.addCell(createCenterCell(log.getOperation(), cellFont));
                 table.addCell(createCenterCell(log.getTarget(), cellFont));
@@ -246,9 +275,14 @@ public class BeckmanAuditReportService {
                 table.addCell(createCenterCell(log.getOldValue(), cellFont));
                 table.addCell(createCenterCell(log.getValue(), cellFont));
                 table.addCell(createCenterCell(log.getUserName(), cellFont));
-            }
+                try {
+                    tableWriter.rowAdded();
+                } catch (DocumentException e) {
+                    throw new ExceptionConverter(e);
+                }
+            });
 
-            document.add(table);
+            tableWriter.finish();
             document.close();
             return out.toByteArray();
 
@@ -0,0 +1,60 @@
+package ncpl.bms.reports.service;
+
+import java.util.Locale;
+
+/**
+ * How the samples of one 10-minute bucket are reduced to the single value a report row shows.
+ * Set per template; templates without one keep the historical "latest sample wins" behaviour.
+ */
+public enum BucketAggregation {
+    FIRST("first_value"),
+    LAST("last_value"),
+    AVG("sum_value / NULLIF(sample_count, 0)"),
+    MIN("min_value"),
+    MAX("max_value");
+
+    // Floors a source timestamp to its 10-minute slot, same as ReportPivot.floorToSlot does in Java.
+    static final String BUCKET_EXPR = "DATEADD(MINUTE, DATEDIFF(MINUTE, 0, timestamp) / 10 * 10, 0)";
+
+    private final String rollupExpr;
+
+    BucketAggregation(String rollupExpr) {
+        this.rollupExpr = rollupExpr;
+    }
+
+    public static BucketAggregation of(String name) {
+        if (name == null || name.isBlank()) {
+            return LAST;
+        }
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown aggregation '" + name + "', expected one of first, last, avg, min, max");
+        }
+    }
+
+    // Column expression on report_rollup_10min that yields this aggregate per bucket.
+    public String getRollupExpr() {
+        return rollupExpr;
+    }
+
+    /**
+     * One (bucket, value) row per 10-minute bucket of a source table, bucketed on the server.
+     * Takes the range start and end (inclusive) as parameters.
+     */
+    public String bucketSql(String table) {
+        String bucket = BUCKET_EXPR;
+        String range = " WHERE timestamp >= ? AND timestamp <= ? AND value IS NOT NULL";
+        switch (this) {
+            case FIRST:
+            case LAST:
+                return "SELECT bucket, value FROM (SELECT " + bucket + " AS bucket, value, " +
+                        "ROW_NUMBER() OVER (PARTITION BY " + bucket + " ORDER BY timestamp " + (this == LAST ? "DESC" : "ASC") + ") AS rn " +
+                        "FROM " + table + range + ") b WHERE rn = 1";
+            case AVG:
+                return "SELECT " + bucket + " AS bucket, AVG(CAST(value AS FLOAT)) AS value FROM " + table + range + " GROUP BY " + bucket;
+            default:
+                return "SELECT " + bucket + " AS bucket, " + name() + "(value) AS value FROM " + table + range + " GROUP BY " + bucket;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package ncpl.bms.reports.service;
 import com.lowagie.text.Document;
 import com.lowagie.text.DocumentException;
+import com.lowagie.text.ExceptionConverter;
 import com.lowagie.text.PageSize;
 import com.lowagie.text.Paragraph;
 import com.lowagie.text.pdf.PdfPTable;
@@ -11,8 +12,10 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.jdbc.core.JdbcTemplate;
+import ncpl.bms.reports.util.LargeTableWriter;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.sql.ResultSet;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
@@ -78,20 +81,22 @@ public class LogReportService {
             long toDateMillis = convertToMillis(toDateStr);
 
             // SQL query with date range filter
-            String sql = "SELECT * FROM log_report WHERE timestamp BETWEEN ? AND ?";
-            List<Map<String, Object>> logs = jdbcTemplate.queryForList(sql, fromDateMillis, toDateMillis);
+            String sql = "SELECT timestamp, username, action FROM log_report WHERE timestamp BETWEEN ? AND ?";
 
             // Add table to PDF
             PdfPTable table = new PdfPTable(3);
             table.addCell("Timestamp");
             table.addCell("Username");
             table.addCell("Action");
+            table.setHeaderRows(1);
 
             DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
-            for (Map<String, Object> log : logs) {
+            // Rows are laid out in batches straight from the result set
+            LargeTableWriter tableWriter = new LargeTableWriter(document, table);
+            jdbcTemplate.query(sql, (ResultSet rs) -> {
                 // Extract timestamp as Long
-                Long timestampMillis = (Long) log.get("timestamp");
+                long timestampMillis = rs.getLong("timestamp");
                 LocalDateTime dateTime = LocalDateTime.ofInstant(
                         new java.util.Date(timestampMillis).toInstant(),
                         ZoneId.systemDefault()
@@ -99,11 +104,16 @@ public class LogReportService {
                 String formattedDate = dateTime.format(formatter);
 
                 table.addCell(formattedDate);
-                table.addCell((String) log.get("username"));
-                table.addCell((String) log.get("action"));
-            }
-
-            document.add(table);
+                table.addCell(rs.getString("username"));
+                table.addCell(rs.getString("action"));
+                try {
+                    tableWriter.rowAdded();
+                } catch (DocumentException e) {
+                    throw new ExceptionConverter(e);
+                }
+            }, fromDateMillis, toDateMillis);
+
+            tableWriter.finish();
             document.close();
 
         } catch (DocumentException e) {
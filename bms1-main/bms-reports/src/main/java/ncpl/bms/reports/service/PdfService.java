@@ -9,27 +9,33 @@ import com.lowagie.text.pdf.*;
 import lombok.extern.slf4j.Slf4j;
 import ncpl.bms.reports.model.dao.ReportTemplate;
 import ncpl.bms.reports.model.dto.GroupDTO;
+import ncpl.bms.reports.model.dto.ParameterDescriptor;
 import ncpl.bms.reports.model.dto.ReportDTO;
 import ncpl.bms.reports.util.DateConverter;
+import ncpl.bms.reports.util.HeaderTemplate;
+import ncpl.bms.reports.util.TeeOutputStream;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.ClassPathResource;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Date;
 import com.lowagie.text.Document;
 import java.util.regex.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
 import com.lowagie.text.Element;
 import com.lowagie.text.PageSize;
 import com.lowagie.text.Phrase;
 import com.lowagie.text.pdf.PdfPCell;
 import com.lowagie.text.pdf.PdfPTable;
 import com.lowagie.text.pdf.PdfWriter;
-import java.io.ByteArrayOutputStream;
-import java.sql.PreparedStatement;
 import org.springframework.jdbc.core.JdbcTemplate;
 import java.time.LocalDateTime;
-import java.io.ByteArrayInputStream;
 import java.util.List;
 import java.awt.Color;
 @Component
@@ -37,7 +43,40 @@ import java.awt.Color;
 public class PdfService {
 
     @Autowired
-    private ReportDataService reportDataService;
+    private ReportPivotService reportPivotService;
+
+    @Autowired
+    private ReportMetadataCache metadataCache;
+
+    @Autowired
+    private ReportRenderExecutor renderExecutor;
+
+    private static final int ROWS_PER_PAGE = 22;
+
+    private static final String USERNAME_TAG = "username";
+
+    @Autowired
+    private ReportDocumentCache documentCache;
+
+    @Autowired
+    private ReportPdfResources pdfResources;
+
+    @Autowired
+    private ReportStorage reportStorage;
+
+    @Autowired
+    private ReportRepository reportRepository;
+
+    @Autowired
+    private ReportStampService reportStampService;
+
+    // Ranges that ended at least this long ago are treated as final and their rendered document is cached
+    @Value("${report.document-cache.settle-ms:3600000}")
+    private long documentSettleMs;
+
+    // Grids longer than this many rows are rendered in page-aligned chunks in parallel; 0 disables it
+    @Value("${report.render.chunk-rows:2200}")
+    private int chunkRows;
 
     @Autowired
     private ReportTemplateService templateService;
@@ -48,29 +87,25 @@ public class PdfService {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
     @Value("${report.heading}")
     private String reportHeading;
 
     @Autowired
     private DateConverter dateConverter;
 
-    private List<Map<String, Object>> reportDataList = null;
 //    public String getSubArea(Long templateId) {
 //        String sql = "SELECT report_group FROM report_template WHERE id = ?";
 //        return jdbcTemplate.queryForObject(sql, new Object[]{templateId}, String.class);
 //    }
 public String getRoomIdAndName(Long templateId) {
-    String sql = "SELECT room_id, room_name FROM report_template WHERE id = ?";
-
     try {
-        Map<String, Object> result = jdbcTemplate.queryForMap(sql, templateId);
-
-        if (result == null || result.isEmpty()) {
-            return "Room ID & Name: N/A";
-        }
+        ReportTemplate template = templateService.getById(templateId);
 
-        String roomId = result.get("room_id") != null ? result.get("room_id").toString().trim() : "N/A";
-        String roomName = result.get("room_name") != null ? result.get("room_name").toString().trim() : "N/A";
+        String roomId = template.getRoomId() != null ? template.getRoomId().trim() : "N/A";
+        String roomName = template.getRoomName() != null ? template.getRoomName().trim() : "N/A";
 
         return "Room ID & Name: " + roomId + " & " + roomName;
     } catch (Exception e) {
@@ -79,8 +114,7 @@ public String getRoomIdAndName(Long templateId) {
 }
 
     public String getSubArea(Long templateId) {
-        String sql = "SELECT report_group FROM report_template WHERE id = ?";
-        return jdbcTemplate.queryForObject(sql, new Object[]{templateId}, String.class);
+        return templateService.getById(templateId).getReport_group();
     }
 
 
@@ -93,8 +127,7 @@ public String getRoomIdAndName(Long templateId) {
     }
 
     public String getReportName(Long templateId) {
-        String sql = "SELECT name FROM report_template WHERE id = ?";
-        return jdbcTemplate.queryForObject(sql, new Object[]{templateId}, String.class);
+        return templateService.getById(templateId).getName();
     }
     public String getDynamicReportHeading(Long templateId) {
         try {
@@ -115,17 +148,7 @@ public String getRoomIdAndName(Long templateId) {
     // This method should already exist in your service
 
     private Map<String, String> getTableToHeaderMap() {
-        String sql = "SELECT TABLE_NAME, Header_Name FROM beckman_room_data";
-        List<Map<String, Object>> rows = jdbcTemplate.queryForList(sql);
-        Map<String, String> map = new HashMap<>();
-
-        for (Map<String, Object> row : rows) {
-            String tableName = String.valueOf(row.get("TABLE_NAME")).trim();
-            String headerName = String.valueOf(row.get("Header_Name")).trim();
-            map.put(tableName, headerName);
-        }
-
-        return map;
+        return metadataCache.getHeaderMap();
     }
 
 //    private void addColorLegend(Document document) throws DocumentException {
@@ -158,192 +181,362 @@ public String getRoomIdAndName(Long templateId) {
 //        table.addCell(labelCell);
 //    }
 
-    public Map<String, Map<String, Map<String, Object>>> calculateStatistics(Long templateId, String fromDate, String toDate) {
-        List<Map<String, Object>> data = reportDataService.generateReportData(templateId, fromDate, toDate);
-
-        Map<String, Map<String, Map<String, Object>>> result = new LinkedHashMap<>();
-
-        for (String key : data.get(0).keySet()) {
-            if (key.equalsIgnoreCase("timestamp")) continue;
-
-            double maxVal = Double.NEGATIVE_INFINITY;
-            double minVal = Double.POSITIVE_INFINITY;
-            long maxTime = 0L, minTime = 0L;
-            double total = 0;
-            int count = 0;
-
-            for (Map<String, Object> row : data) {
-                Object valObj = row.get(key);
-                Object timeObj = row.get("timestamp");
-
-                if (valObj == null || timeObj == null) continue;
-
-                try {
-                    double val = Double.parseDouble(valObj.toString());
-
-                    long time;
-                    if (timeObj instanceof Timestamp) {
-                        time = ((Timestamp) timeObj).getTime(); // ✅ proper timestamp conversion
-                    } else {
-                        time = Long.parseLong(timeObj.toString());
-                    }
+    // inside your generatePdf method (AFTER the signature)
+    public void generatePdf(Long templateId, String fromDateTime, String toDate, String username, String assignedTo, String assigned_approver) throws Exception {
+        generatePdf(templateId, fromDateTime, toDate, username, assignedTo, assigned_approver, null);
+    }
 
-                    if (val > maxVal) {
-                        maxVal = val;
-                        maxTime = time;
-                    }
-                    if (val < minVal) {
-                        minVal = val;
-                        minTime = time;
-                    }
+    public Long generatePdf(Long templateId, String fromDateTime, String toDate, String username, String assignedTo,
+                            String assigned_approver, OutputStream out) throws Exception {
+        return generatePdf(templateId, fromDateTime, toDate, username, assignedTo, assigned_approver, out, ReportProgressListener.NONE);
+    }
 
-                    total += val;
-                    count++;
-                } catch (Exception e) {
-                    log.warn("⛔ Error parsing value or timestamp for parameter '{}': {}", key, e.getMessage());
-                }
+    /**
+     * Renders the report into a temp file and, when {@code out} is given, into {@code out} at the same
+     * time, then stores the file through ReportStorage. No full copy of the PDF is kept on the heap.
+     *
+     * @return id of the stored_reports row
+     */
+    public Long generatePdf(Long templateId, String fromDateTime, String toDate, String username, String assignedTo,
+                            String assigned_approver, OutputStream out, ReportProgressListener listener) throws Exception {
+        Path pdfFile = Files.createTempFile("report-", ".pdf");
+        try {
+            try (OutputStream fileOut = new BufferedOutputStream(Files.newOutputStream(pdfFile))) {
+                renderPdf(templateId, fromDateTime, toDate, username, fileOut, out, listener);
             }
+            listener.update("STORING", 95);
+            return storePdf(templateId, fromDateTime, toDate, username, assignedTo, assigned_approver, pdfFile, listener);
+        } finally {
+            Files.deleteIfExists(pdfFile);
+        }
+    }
 
-            Map<String, Map<String, Object>> statMap = new LinkedHashMap<>();
-            Map<String, Object> maxMap = new HashMap<>();
-            Map<String, Object> minMap = new HashMap<>();
-            Map<String, Object> avgMap = new HashMap<>();
-
-            if (count > 0) {
-                maxMap.put("value", (int) maxVal);
-                maxMap.put("timestamp", maxTime);
-
-                minMap.put("value", (int) minVal);
-                minMap.put("timestamp", minTime);
-
-                avgMap.put("value", (int) (total / count));
-            } else {
-                log.warn("⚠️ No valid data found for parameter '{}'", key);
-            }
+    private void renderPdf(Long templateId, String fromDateTime, String toDate, String username, OutputStream fileOut, OutputStream out,
+                           ReportProgressListener listener) throws Exception {
+        long start = System.currentTimeMillis();
+        System.out.println("⏱ [1] START PDF generation");
+        listener.update("FETCHING", 0);
 
-            statMap.put("max", maxMap);
-            statMap.put("min", minMap);
-            statMap.put("avg", avgMap);
-            result.put(key, statMap);
+        // Identical requests share one render; settled ranges can no longer change and are kept for later ones
+        String key = templateId + ":" + fromDateTime + ":" + toDate + ":" + getTemplateVersion(templateId);
+        boolean settled = Long.parseLong(toDate) <= System.currentTimeMillis() - documentSettleMs;
+        RenderedDocument document = documentCache.acquire(key, settled,
+                () -> renderDocument(templateId, fromDateTime, toDate, listener));
+        try {
+            System.out.println("⏱ [7] Document ready in " + (System.currentTimeMillis() - start) + " ms");
+            OutputStream sink = out == null ? fileOut : new TeeOutputStream(fileOut, out);
+            stampDocument(document, username, sink);
+            System.out.println("⏱ [8] Document stamped. Total time so far: " + (System.currentTimeMillis() - start) + " ms");
+        } finally {
+            documentCache.release(document);
         }
+    }
 
-        return result;
+    // Changes whenever anything that shows up in the rendered document is edited
+    private int getTemplateVersion(Long templateId) {
+        ReportTemplate template = templateService.getById(templateId);
+        return Objects.hash(template.getName(), template.getParameters(), template.getAggregation(), template.getRoomId(),
+                template.getRoomName(), template.getReport_group(), template.getAdditionalInfo(), buildHeaderLabels(templateId));
     }
 
-    // inside your generatePdf method (AFTER the signature)
-    public void generatePdf(Long templateId, String fromDateTime, String toDate, String username, String assignedTo, String assigned_approver) throws Exception {
+    /**
+     * Renders everything that does not depend on who asked: data pages and the statistics page, with the
+     * running header but no footer and no username. Long grids are split into page-aligned chunks that
+     * are rendered in parallel.
+     */
+    private RenderedDocument renderDocument(Long templateId, String fromDateTime, String toDate, ReportProgressListener listener) throws Exception {
         long start = System.currentTimeMillis();
-        System.out.println("⏱ [1] START PDF generation");
-
-        reportDataList = reportDataService.generateReportData(templateId, fromDateTime, toDate);
+        ReportPivot pivot = reportPivotService.buildPivot(templateId, fromDateTime, toDate);
+        if (!pivot.hasData()) {
+            throw new RuntimeException("No report data found for template " + templateId + " in the selected range");
+        }
         System.out.println("⏱ [2] Data fetched in " + (System.currentTimeMillis() - start) + " ms");
 
         SimpleDateFormat dateTimeFormatter = new SimpleDateFormat("dd-MM-yyyy HH:mm:ss");
         String formattedFromDateTime = dateTimeFormatter.format(new Date(Long.parseLong(fromDateTime)));
         String formattedToDateTime = dateTimeFormatter.format(new Date(Long.parseLong(toDate)));
 
-        Document document = new Document(PageSize.A4.rotate());
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-        PdfWriter writer = PdfWriter.getInstance(document, byteArrayOutputStream);
-        System.out.println("⏱ [3] PDF Writer initialized in " + (System.currentTimeMillis() - start) + " ms");
-
-        TablePageEvent event = new TablePageEvent(formattedFromDateTime, formattedToDateTime, username, templateId, this);
-        writer.setPageEvent(event);
-        System.out.println("⏱ [4] PageEvent set in " + (System.currentTimeMillis() - start) + " ms");
-
-        document.open();
-        System.out.println("⏱ [5] Document opened in " + (System.currentTimeMillis() - start) + " ms");
-
-        Map<String, Object> stringObjectMap = reportDataList.get(0);
-        int columnCount = stringObjectMap.size();
-        int rowCount = 0;
-        int rowsPerPage = 22;
-        Map<String, Map<String, Map<String, Object>>> statistics = calculateStatistics(templateId, fromDateTime, toDate);
-        System.out.println("⏱ [6] Statistics calculated in " + (System.currentTimeMillis() - start) + " ms");
-
-        PdfPTable table = new PdfPTable(columnCount);
-        table.setWidthPercentage(100f);
-        table.setSpacingBefore(5);
-
-        addTableHeader(templateId, stringObjectMap, table);
-        Map<String, double[]> parameterRanges = extractParameterRanges(templateId);
-
-        for (Map<String, Object> map : reportDataList) {
-            for (Map.Entry<String, Object> entry : map.entrySet()) {
-                Object rawValue = entry.getValue();
-                String valueStr = (rawValue == null || rawValue.toString().trim().isEmpty() || "null".equalsIgnoreCase(rawValue.toString())) ? "null" : rawValue.toString();
-                if (entry.getKey().equalsIgnoreCase("timestamp")) {
-                    try {
-                        valueStr = convertMillisToDate(Long.parseLong(valueStr));
-                    } catch (Exception ignored) {}
+        // All per-report state lives in the context, so concurrent exports do not share anything.
+        // The username is stamped per request afterwards, so the rendered document can be shared.
+        ReportRenderContext context = new ReportRenderContext(templateId, pivot, extractParameterRanges(templateId),
+                buildHeaderLabels(templateId), formattedFromDateTime, formattedToDateTime, null);
+
+        // Range highlighting is disabled for exported reports
+        ReportColumnPlan plan = new ReportColumnPlan(context, "null", false);
+        // Max/min/avg are accumulated while the rows are rendered, so the statistics cost no extra query
+        StatisticsAccumulator[] columnStats = newAccumulators(pivot.getColumnCount());
+        RenderProgress progress = new RenderProgress(listener, pivot.getSlotCount());
+
+        int chunkSlots = chunkRows <= 0 ? 0 : (chunkRows + ROWS_PER_PAGE - 1) / ROWS_PER_PAGE * ROWS_PER_PAGE;
+        if (chunkSlots > 0 && pivot.getSlotCount() > chunkSlots) {
+            return renderChunked(context, plan, columnStats, chunkSlots, progress);
+        }
+
+        Path file = documentCache.newFragmentFile("report-doc-");
+        try {
+            float[] usernameAt = renderFragment(context, file, document -> {
+                writeDataRows(document, context, plan, 0, pivot.getSlotCount(), columnStats, true, progress);
+                writeStatistics(document, context, columnStats);
+//                addColorLegend(document);
+            });
+            return new RenderedDocument(List.of(file), usernameAt[0], usernameAt[1]);
+        } catch (Exception e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+    }
+
+    /**
+     * Renders slots [fromSlot, toSlot) as tables of ROWS_PER_PAGE rows, one per page. With
+     * {@code breakAfterLast} a page break also follows the last table, as the statistics page expects.
+     */
+    private void writeDataRows(Document document, ReportRenderContext context, ReportColumnPlan plan, int fromSlot, int toSlot,
+                               StatisticsAccumulator[] columnStats, boolean breakAfterLast, RenderProgress progress) throws DocumentException {
+        ReportPivot pivot = context.getPivot();
+        PdfPTable table = null;
+        for (int slot = fromSlot; slot < toSlot; slot++) {
+            if (table == null) {
+                table = new PdfPTable(context.getColumnCount());
+                table.setWidthPercentage(100f);
+                table.setSpacingBefore(5);
+                addTableHeader(context, table);
+            }
+
+            long slotTime = pivot.getSlotTime(slot);
+            table.addCell(plan.timeCell(slotTime));
+
+            for (int c = 0; c < pivot.getColumnCount(); c++) {
+                if (pivot.hasValue(c, slot)) {
+                    double value = pivot.getValue(c, slot);
+                    columnStats[c].accept(value, slotTime);
+                    table.addCell(plan.valueCell(c, value));
+                } else {
+                    table.addCell(plan.missingCell());
                 }
-                PdfPCell valueCell = new PdfPCell(new Phrase(valueStr));
-                valueCell.setHorizontalAlignment(Element.ALIGN_CENTER);
-                try {
-                    double value = Double.parseDouble(valueStr);
-                    double[] range = parameterRanges.get(extractBaseParameter(entry.getKey()));
-                    if (range != null) {
-                        double from = range[0], to = range[1];
-//                        if (value > to) valueCell.setBackgroundColor(CMYKColor.RED);
-//                        else if (value < from) valueCell.setBackgroundColor(CMYKColor.CYAN);
-                    }
-                } catch (NumberFormatException ignored) {}
-                table.addCell(valueCell);
             }
-            rowCount++;
-            if (rowCount % rowsPerPage == 0) {
+
+            if ((slot - fromSlot + 1) % ROWS_PER_PAGE == 0) {
                 document.add(table);
-                document.newPage();
-                table = new PdfPTable(columnCount);
-                table.setWidthPercentage(100f);
-                table.setSpacingBefore(5);
-                addTableHeader(templateId, stringObjectMap, table);
+                table = null;
+                progress.rowsDone(ROWS_PER_PAGE);
+                if (breakAfterLast || slot + 1 < toSlot) {
+                    document.newPage();
+                }
             }
         }
 
-        if (rowCount % rowsPerPage != 0) {
+        if (table != null) {
             document.add(table);
-            document.newPage();
+            progress.rowsDone((toSlot - fromSlot) % ROWS_PER_PAGE);
+            if (breakAfterLast) {
+                document.newPage();
+            }
         }
+    }
 
-        System.out.println("⏱ [7] Table rows added in " + (System.currentTimeMillis() - start) + " ms");
+    private void writeStatistics(Document document, ReportRenderContext context, StatisticsAccumulator[] columnStats) throws DocumentException {
+        ReportPivot pivot = context.getPivot();
+        Map<String, Map<String, Map<String, Object>>> statistics = new LinkedHashMap<>();
+        for (int c = 0; c < columnStats.length; c++) {
+            if (!columnStats[c].hasData()) {
+                log.warn("⚠️ No valid data found for parameter '{}'", pivot.getColumn(c));
+            }
+            statistics.put(pivot.getColumn(c), columnStats[c].toMap());
+        }
 
-        PdfPTable statisticsTable = new PdfPTable(columnCount);
+        PdfPTable statisticsTable = new PdfPTable(context.getColumnCount());
         statisticsTable.setWidthPercentage(100f);
         statisticsTable.setSpacingBefore(10);
 
-        addTableHeader(templateId, stringObjectMap, statisticsTable);
+        addTableHeader(context, statisticsTable);
         addStatisticsRow("Max", statistics, statisticsTable);
         addStatisticsRow("Min", statistics, statisticsTable);
         addStatisticsRow("Avg", statistics, statisticsTable);
 
         document.add(statisticsTable);
-//        addColorLegend(document);
-        document.close();
-        System.out.println("⏱ [8] Document closed. Total time so far: " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    private static StatisticsAccumulator[] newAccumulators(int columns) {
+        StatisticsAccumulator[] stats = new StatisticsAccumulator[columns];
+        for (int c = 0; c < columns; c++) {
+            stats[c] = new StatisticsAccumulator();
+        }
+        return stats;
+    }
+
+    /**
+     * Renders page-aligned chunks of the grid into separate PDF files on the render pool, then the
+     * statistics page from the merged accumulators. The fragments are joined when the document is
+     * stamped, once the total page count is known.
+     */
+    private RenderedDocument renderChunked(ReportRenderContext context, ReportColumnPlan plan, StatisticsAccumulator[] columnStats,
+                                           int chunkSlots, RenderProgress progress) throws Exception {
+        int slotCount = context.getPivot().getSlotCount();
+        List<Path> fragments = new ArrayList<>();
+        try {
+            List<Callable<float[]>> tasks = new ArrayList<>();
+            List<StatisticsAccumulator[]> chunkStats = new ArrayList<>();
+            for (int from = 0; from < slotCount; from += chunkSlots) {
+                Path fragment = documentCache.newFragmentFile("report-chunk-");
+                fragments.add(fragment);
+                StatisticsAccumulator[] stats = newAccumulators(columnStats.length);
+                chunkStats.add(stats);
+                int fromSlot = from;
+                int toSlot = Math.min(slotCount, from + chunkSlots);
+                tasks.add(() -> renderFragment(context, fragment,
+                        document -> writeDataRows(document, context, plan, fromSlot, toSlot, stats, false, progress)));
+            }
+            log.info("Rendering {} slots in {} chunks", slotCount, tasks.size());
+
+            renderExecutor.invokeAll(tasks);
+            for (StatisticsAccumulator[] stats : chunkStats) {
+                for (int c = 0; c < columnStats.length; c++) {
+                    columnStats[c].merge(stats[c]);
+                }
+            }
+
+            Path statisticsPage = documentCache.newFragmentFile("report-chunk-");
+            fragments.add(statisticsPage);
+            float[] usernameAt = renderFragment(context, statisticsPage, document -> writeStatistics(document, context, columnStats));
+            return new RenderedDocument(fragments, usernameAt[0], usernameAt[1]);
+        } catch (Exception e) {
+            // invokeAll only returns once no chunk task is still writing its fragment
+            for (Path fragment : fragments) {
+                Files.deleteIfExists(fragment);
+            }
+            throw e;
+        }
+    }
+
+    // Maps rendered rows onto 5..90 percent of the job; the listener only hears about whole-percent changes
+    private static final class RenderProgress {
+        private final ReportProgressListener listener;
+        private final int totalRows;
+        private final AtomicInteger rows = new AtomicInteger();
+        private final AtomicInteger reported = new AtomicInteger(-1);
+
+        private RenderProgress(ReportProgressListener listener, int totalRows) {
+            this.listener = listener;
+            this.totalRows = Math.max(1, totalRows);
+            listener.update("RENDERING", 5);
+        }
+
+        private void rowsDone(int count) {
+            int percent = 5 + (int) (85L * rows.addAndGet(count) / totalRows);
+            int last = reported.get();
+            if (percent > last && reported.compareAndSet(last, percent)) {
+                listener.update("RENDERING", percent);
+            }
+        }
+    }
+
+    private interface FragmentBody {
+        void write(Document document) throws DocumentException;
+    }
+
+    // One fragment: same page size, margins and running header as the full report, but no footer.
+    // Returns where the running header left room for the username.
+    private float[] renderFragment(ReportRenderContext context, Path file, FragmentBody body) throws Exception {
+        try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(file))) {
+            Document document = new Document(PageSize.A4.rotate());
+            PdfWriter writer = PdfWriter.getInstance(document, os);
+            TablePageEvent event = new TablePageEvent(context, this);
+            writer.setPageEvent(event);
+            document.open();
+            body.write(document);
+            document.close();
+            return new float[]{event.usernameX, event.usernameY};
+        }
+    }
+
+    /**
+     * Copies the pages of a rendered document into {@code sink} and stamps the per-request parts on
+     * each: the username in the header and the printed-on/printed-by/page-number footer.
+     */
+    private void stampDocument(RenderedDocument rendered, String username, OutputStream sink) throws Exception {
+        List<PdfReader> readers = new ArrayList<>();
+        try {
+            int totalPages = 0;
+            for (Path fragment : rendered.getFragments()) {
+                PdfReader reader = new PdfReader(fragment.toString());
+                readers.add(reader);
+                totalPages += reader.getNumberOfPages();
+            }
+
+            Document document = new Document(PageSize.A4.rotate());
+            PdfCopy copy = new PdfCopy(document, sink);
+            document.open();
+            BaseFont baseFont = pdfResources.getHelvetica();
+            int pageNumber = 0;
+            for (PdfReader reader : readers) {
+                for (int i = 1; i <= reader.getNumberOfPages(); i++) {
+                    PdfImportedPage page = copy.getImportedPage(reader, i);
+                    PdfCopy.PageStamp stamp = copy.createPageStamp(page);
+                    pageNumber++;
+                    PdfContentByte cb = stamp.getOverContent();
+                    cb.beginText();
+                    cb.setFontAndSize(baseFont, 11);
+                    cb.setTextMatrix(rendered.getUsernameX(), rendered.getUsernameY());
+                    cb.showText(username);
+                    cb.endText();
+                    writeFooter(cb, baseFont, document.right() - 120, document.bottom() - 10,
+                            username, "Page No: " + pageNumber + " of " + totalPages);
+                    stamp.alterContents();
+                    copy.addPage(page);
+                }
+                copy.freeReader(reader);
+            }
+            document.close();
+        } finally {
+            readers.forEach(PdfReader::close);
+        }
+    }
 
+    // Footer text block stamped on every page; its three lines sit at y + 20, y + 8 and y - 4.
+    private static void writeFooter(PdfContentByte cb, BaseFont baseFont, float x, float y, String username, String pageText) {
+        cb.beginText();
+        cb.setFontAndSize(baseFont, 10);
+
+        // Multiline positioning manually
+        cb.setTextMatrix(x, y + 20);
+        cb.showText("Printed On: " + LocalDateTime.now().format(DateTimeFormatter.ofPattern("dd-MM-yy HH:mm")));
+
+        cb.setTextMatrix(x, y + 8);
+        cb.showText("Printed By: " + username);
+
+        cb.setTextMatrix(x, y - 4);
+        cb.showText(pageText);
+
+        cb.endText();
+    }
+
+    public String getReportFileName(Long templateId) {
         String dynamicHeading = getDynamicReportHeading(templateId);
         String cleanHeading = dynamicHeading.replaceAll("[^a-zA-Z0-9]", "_").replaceAll("_+", "_");
-        String pdfFileName = cleanHeading + ".pdf";
+        return cleanHeading + ".pdf";
+    }
+
+    private Long storePdf(Long templateId, String fromDateTime, String toDate, String username, String assignedTo,
+                          String assigned_approver, Path pdfFile, ReportProgressListener listener) throws IOException {
+        long start = System.currentTimeMillis();
+        String pdfFileName = getReportFileName(templateId);
+        ReportStorage.StoredPdf pdf = reportStorage.store(pdfFile);
         long currentTimeMillis = System.currentTimeMillis();
         String currentDateStr = Long.toString(currentTimeMillis);
         int chk = (assigned_approver == null || assigned_approver.trim().isEmpty()) ? 0 : 1;
 
-        String sql = "INSERT INTO stored_reports (name, from_date, to_date, pdf_data, generated_by, generated_date, assigned_review, assigned_approver, is_approver_required) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
-        jdbcTemplate.update(connection -> {
-            PreparedStatement ps = connection.prepareStatement(sql);
-            ps.setString(1, pdfFileName);
-            ps.setTimestamp(2, new Timestamp(Long.parseLong(fromDateTime))); // ✅ Fix
-            ps.setTimestamp(3, new Timestamp(Long.parseLong(toDate)));       // ✅ Fix
-            ps.setBytes(4, byteArrayOutputStream.toByteArray());
-            ps.setString(5, username);
-            ps.setString(6, currentDateStr); // this is okay since it's a string
-            ps.setString(7, assignedTo);
-            ps.setString(8, assigned_approver);
-            ps.setBoolean(9, chk == 1);
-            return ps;
+        String sql = "INSERT INTO stored_reports (name, from_date, to_date, pdf_data, generated_by, generated_date, assigned_review, assigned_approver, is_approver_required, pdf_hash, pdf_size, generated_at, template_id) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        // The blob is streamed from the file by the blob backend, empty with the file backend
+        Long id = transactionTemplate.execute(status -> {
+            Long reportId = reportRepository.insert(ReportKind.MANUAL, sql, pdfFileName,
+                    new Timestamp(Long.parseLong(fromDateTime)), new Timestamp(Long.parseLong(toDate)), pdf.getBlob(),
+                    username, currentDateStr, assignedTo, assigned_approver, chk == 1, pdf.getHash(), pdf.getSize(),
+                    new Timestamp(currentTimeMillis), templateId);
+            listener.stored(reportId);
+            return reportId;
         });
         System.out.println("⏱ [9] PDF saved to DB in " + (System.currentTimeMillis() - start) + " ms");
+        return id;
     }
 
 
@@ -369,72 +562,6 @@ public String getRoomIdAndName(Long templateId) {
     //        return base;
     //    }
 
-    private Map<String, String> extractFormattedParameterRanges(Long templateId) {
-        ReportTemplate template = templateService.getById(templateId);
-        if (template == null) {
-            throw new RuntimeException("ReportTemplate not found for templateId: " + templateId);
-        }
-
-        List<String> parameters = template.getParameters();
-        if (parameters == null || parameters.isEmpty()) {
-            throw new RuntimeException("No parameters found for templateId: " + templateId);
-        }
-
-        Map<String, String> formattedParameterRanges = new HashMap<>();
-
-        for (String parameter : parameters) {
-            String baseName = extractBaseParameter(parameter);
-            if (baseName.startsWith("EMS_NEW_")) {
-                baseName = baseName.substring("EMS_NEW_".length());
-            }
-            String unit = extractUnit(parameter);
-
-            String formatted = unit.isEmpty() ? baseName : String.format("%s(%s)", baseName, unit);
-            formattedParameterRanges.put(parameter, formatted);
-        }
-        return formattedParameterRanges;
-    }
-
-    private String removeSuffix(String columnName) {
-        if (columnName.contains("_From_")) {
-            return columnName.substring(0, columnName.indexOf("_From_"));
-        }
-        return columnName;
-    }
-
-    private static final Pattern RANGE_PATTERN = Pattern.compile("_From_(\\d+(?:\\.\\d+)?)_To_(\\d+(?:\\.\\d+)?)");
-    private static final Pattern UNIT_PATTERN = Pattern.compile("_Unit_([a-zA-Z]+)$");
-
-    private double getFromValue(String paramName) {
-        Matcher matcher = RANGE_PATTERN.matcher(paramName);
-        if (matcher.find()) {
-            return Double.parseDouble(matcher.group(1));
-        }
-        return Double.NEGATIVE_INFINITY;
-    }
-
-
-    private double getToValue(String paramName) {
-        Matcher matcher = RANGE_PATTERN.matcher(paramName);
-        if (matcher.find()) {
-            return Double.parseDouble(matcher.group(2));
-        }
-        return Double.POSITIVE_INFINITY;
-    }
-
-    private String extractUnit(String paramName) {
-        Matcher matcher = UNIT_PATTERN.matcher(paramName);
-        if (matcher.find()) {
-            return matcher.group(1);
-        }
-        return "";
-    }
-
-    private String extractBaseParameter(String columnName) {
-        return columnName.replaceAll("(_From_.*|_Unit_.*)$", "");
-    }
-
-
     private void addStatisticsRow(String label, Map<String, Map<String, Map<String, Object>>> statistics, PdfPTable table) {
         Font fontBold = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 10);
         Font fontNormal = FontFactory.getFont(FontFactory.HELVETICA, 9);
@@ -492,137 +619,117 @@ public String getRoomIdAndName(Long templateId) {
         }
     }
 
-    private void addTableHeader(Long templateId, Map<String, Object> stringObjectMap, PdfPTable table) {
+    private void addTableHeader(ReportRenderContext context, PdfPTable table) {
         Font font = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 10, Color.WHITE); // White header text
         PdfPCell cell = new PdfPCell();
         cell.setBackgroundColor(new Color(0, 123, 128));
         cell.setPadding(5);
         cell.setHorizontalAlignment(Element.ALIGN_CENTER);
 
-        ReportTemplate template = templateService.getById(templateId);
-        Map<String, String> tableToHeaderMap = getTableToHeaderMap();
-
-
         // Timestamp header
         cell.setPhrase(new Phrase("Timestamp", font));
         table.addCell(cell);
 
-        // Parameter headers with range only if explicitly set
-        for (String parameter : template.getParameters()) {
-            String baseKey = extractBaseParameter(parameter);
-            String headerLabel = tableToHeaderMap.getOrDefault(baseKey, baseKey); // HOT_SPOT_RH for example
-
-            double fromValue = getFromValue(parameter);
-            double toValue = getToValue(parameter);
-
-            String unit = extractUnit(parameter); // get % from _Unit_%
-            String formattedHeader = unit.isEmpty() ? headerLabel : headerLabel + "(" + unit + ")";
-
-            if (fromValue != Double.NEGATIVE_INFINITY && toValue != Double.POSITIVE_INFINITY) {
-                formattedHeader += String.format("\nRange: %.0f - %.0f", fromValue, toValue);
-            }
-
-            cell.setPhrase(new Phrase(formattedHeader, font));
+        for (String header : context.getHeaders()) {
+            cell.setPhrase(new Phrase(header, font));
             table.addCell(cell);
         }
 
-
         table.setHeaderRows(1);
     }
 
+    // Header label per parameter, built once per report instead of on every page break.
+    private List<String> buildHeaderLabels(Long templateId) {
+        Map<String, String> tableToHeaderMap = getTableToHeaderMap();
+        List<String> headers = new ArrayList<>();
+        for (ParameterDescriptor parameter : templateService.getById(templateId).getParameterDescriptors()) {
+            headers.add(parameter.getHeader(tableToHeaderMap));
+        }
+        return headers;
+    }
+
     private class TablePageEvent extends PdfPageEventHelper {
 
+        private final ReportRenderContext context;
         private final String fromDateTime;
         private final String toDateTime;
-        private final String username;
         private final Long templateId;
         private final PdfService pdfService;
-        private String reviewedBy = "";
-        private String reviewDate = "";
-        private PdfTemplate totalPageTemplate;
-        private BaseFont baseFont;
-
+        // Baseline of the blank left after "Username  :", where stampDocument writes the name
+        private float usernameX;
+        private float usernameY;
+        // The header is the same on every page, so it is laid out once and drawn from a template
+        private HeaderTemplate header;
+
+        public TablePageEvent(ReportRenderContext context, PdfService pdfService) {
+            this.context = context;
+            this.fromDateTime = context.getFromDateTime();
+            this.toDateTime = context.getToDateTime();
+            this.templateId = context.getTemplateId();
+            this.pdfService = pdfService;
+        }
 
         @Override
-        public void onOpenDocument(PdfWriter writer, Document document) {
-            totalPageTemplate = writer.getDirectContent().createTemplate(50, 50);
-            try {
-                baseFont = BaseFont.createFont(BaseFont.HELVETICA, BaseFont.WINANSI, BaseFont.NOT_EMBEDDED);
-            } catch (DocumentException | IOException e) {
-                throw new RuntimeException(e);
+        public void onGenericTag(PdfWriter writer, Document document, Rectangle rect, String text) {
+            if (USERNAME_TAG.equals(text)) {
+                // Fired while the header is drawn into its template, so in template coordinates
+                usernameX = rect.getLeft();
+                usernameY = rect.getBottom();
             }
         }
 
         @Override
-        public void onCloseDocument(PdfWriter writer, Document document) {
-            totalPageTemplate.beginText();
-            totalPageTemplate.setFontAndSize(baseFont, 10);
-            totalPageTemplate.setTextMatrix(0, 0);
-            totalPageTemplate.showText(String.valueOf(writer.getPageNumber() - 1));
-            totalPageTemplate.endText();
-        }
-
-        public TablePageEvent(String fromDateTime, String toDateTime, String username, Long templateId, PdfService pdfService) {
-            this.fromDateTime = fromDateTime;
-            this.toDateTime = toDateTime;
-            this.username = username;
-            this.templateId = templateId;
-            this.pdfService = pdfService;
+        public void onStartPage(PdfWriter writer, Document document) {
             try {
-                ReportDTO latestReport = pdfService.findLatestGeneratedReport(templateId, fromDateTime, toDateTime, username);
-                if (latestReport != null) {
-                    this.reviewedBy = latestReport.getReviewedBy();
-                    if (latestReport.getReviewDate() != null) {
-                        long millis = Long.parseLong(latestReport.getReviewDate());
-                        this.reviewDate = new SimpleDateFormat("dd-MM-yyyy HH:mm:ss").format(new Date(millis));
-                    }
+                if (header == null) {
+                    header = new HeaderTemplate(writer, document, buildHeaderTable());
+                    // The template sits at the top of the page body
+                    usernameX += document.left();
+                    usernameY += document.top() - header.getHeight();
                 }
+                header.addTo(writer, document);
             } catch (Exception e) {
-                log.warn("Failed to fetch review info for footer", e);
+                throw new RuntimeException("Error creating PDF header", e);
             }
         }
 
+        private PdfPTable buildHeaderTable() throws DocumentException {
+            Font fontTitle = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 13);
+            Font fontContent = FontFactory.getFont(FontFactory.HELVETICA, 11);
 
+            PdfPTable headerTable = new PdfPTable(3);
+            headerTable.setWidthPercentage(100);
+            headerTable.setWidths(new float[]{40f, 40f, 20f});  // Logo gets rightmost 20%
+
+            Font fontAddress = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 16); // CORRECT
+
+            PdfPCell addressCell = new PdfPCell(new Paragraph(address, fontAddress));
+            addressCell.setBorder(Rectangle.NO_BORDER);
+            addressCell.setHorizontalAlignment(Element.ALIGN_LEFT);
+            addressCell.setVerticalAlignment(Element.ALIGN_MIDDLE);
+            addressCell.setPadding(5);
 
-        @Override
-        public void onStartPage(PdfWriter writer, Document document) {
-            try {
-                Font fontTitle = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 13);
-                Font fontContent = FontFactory.getFont(FontFactory.HELVETICA, 11);
-
-                PdfPTable headerTable = new PdfPTable(3);
-                headerTable.setWidthPercentage(100);
-                headerTable.setWidths(new float[]{40f, 40f, 20f});  // Logo gets rightmost 20%
-
-                Font fontAddress = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 16); // CORRECT
-
-                PdfPCell addressCell = new PdfPCell(new Paragraph(address, fontAddress));
-                addressCell.setBorder(Rectangle.NO_BORDER);
-                addressCell.setHorizontalAlignment(Element.ALIGN_LEFT);
-                addressCell.setVerticalAlignment(Element.ALIGN_MIDDLE);
-                addressCell.setPadding(5);
-
-
-                // Middle cell - optional (can leave blank or use for subtitle)
-                PdfPCell centerCell = new PdfPCell(new Paragraph(""));
-                centerCell.setBorder(Rectangle.NO_BORDER);
-
-                // Right cell - Logo
-                PdfPCell logoCell = new PdfPCell();
-                try {
-                    Image image = Image.getInstance(new ClassPathResource("static/images/logo1.png").getURL());
-                    image.scaleToFit(90, 70);
-                    image.setAlignment(Image.ALIGN_RIGHT);  // align right inside the cell
-                    logoCell.addElement(image);
-                } catch (IOException e) {
-                    logoCell.addElement(new Paragraph("Logo"));
-                }
-                logoCell.setBorder(Rectangle.NO_BORDER);
-                logoCell.setPaddingRight(5);
-                logoCell.setHorizontalAlignment(Element.ALIGN_RIGHT);
-                logoCell.setVerticalAlignment(Element.ALIGN_MIDDLE);
 
-                // Title row (spans all columns)
+            // Middle cell - optional (can leave blank or use for subtitle)
+            PdfPCell centerCell = new PdfPCell(new Paragraph(""));
+            centerCell.setBorder(Rectangle.NO_BORDER);
+
+            // Right cell - Logo
+            PdfPCell logoCell = new PdfPCell();
+            Image image = pdfResources.getLogo();
+            if (image != null) {
+                image.scaleToFit(90, 70);
+                image.setAlignment(Image.ALIGN_RIGHT);  // align right inside the cell
+                logoCell.addElement(image);
+            } else {
+                logoCell.addElement(new Paragraph("Logo"));
+            }
+            logoCell.setBorder(Rectangle.NO_BORDER);
+            logoCell.setPaddingRight(5);
+            logoCell.setHorizontalAlignment(Element.ALIGN_RIGHT);
+            logoCell.setVerticalAlignment(Element.ALIGN_MIDDLE);
+
+            // Title row (spans all columns)
 //                String dynamicHeading = pdfService.getDynamicReportHeading(templateId);
 //                PdfPCell titleCell = new PdfPCell(new Paragraph(dynamicHeading, fontTitle));
 //                titleCell.setColspan(3);
@@ -632,83 +739,54 @@ public String getRoomIdAndName(Long templateId) {
 //                titleCell.setPaddingTop(5);
 //                titleCell.setPaddingBottom(10);
 
-                // Sub-info row (Room, Sensor, Date, etc.)
-                PdfPCell infoCell = new PdfPCell();
-                infoCell.setColspan(3);
-                infoCell.setBorder(Rectangle.NO_BORDER);
-                infoCell.setPaddingLeft(5);
-
-                DateTimeFormatter inputFormat = DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss");
-                DateTimeFormatter dateFormat = DateTimeFormatter.ofPattern("dd-MMM-yyyy");
-                DateTimeFormatter timeFormat = DateTimeFormatter.ofPattern("HH:mm:ss");
-
-                LocalDateTime from = LocalDateTime.parse(fromDateTime, inputFormat);
-                LocalDateTime to = LocalDateTime.parse(toDateTime, inputFormat);
-
-                String displayStartDate = from.format(dateFormat);
-                String displayStartTime = from.format(timeFormat);
-                String displayEndDate = to.format(dateFormat);
-                String displayEndTime = to.format(timeFormat);
-
-                Paragraph paragraph = new Paragraph();
-                paragraph.setFont(fontContent);
-                paragraph.setLeading(12f);
-                String roomInfo = pdfService.getRoomIdAndName(templateId);
-                paragraph.add(roomInfo + "\n");
-                String groupName = pdfService.getSubArea(templateId);
-                paragraph.add("Sensor ID : " + groupName + "\n");
-                paragraph.add("Username  : " + username + "\n");
-                paragraph.add("From: " + displayStartDate + " " + displayStartTime + " to " + displayEndDate + " " + displayEndTime + "\n");
-
-                infoCell.addElement(paragraph);
-
-                // Add to table
-                headerTable.addCell(addressCell);
-                headerTable.addCell(centerCell);
-                headerTable.addCell(logoCell);
+            // Sub-info row (Room, Sensor, Date, etc.)
+            PdfPCell infoCell = new PdfPCell();
+            infoCell.setColspan(3);
+            infoCell.setBorder(Rectangle.NO_BORDER);
+            infoCell.setPaddingLeft(5);
+
+            DateTimeFormatter inputFormat = DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss");
+            DateTimeFormatter dateFormat = DateTimeFormatter.ofPattern("dd-MMM-yyyy");
+            DateTimeFormatter timeFormat = DateTimeFormatter.ofPattern("HH:mm:ss");
+
+            LocalDateTime from = LocalDateTime.parse(fromDateTime, inputFormat);
+            LocalDateTime to = LocalDateTime.parse(toDateTime, inputFormat);
+
+            String displayStartDate = from.format(dateFormat);
+            String displayStartTime = from.format(timeFormat);
+            String displayEndDate = to.format(dateFormat);
+            String displayEndTime = to.format(timeFormat);
+
+            Paragraph paragraph = new Paragraph();
+            paragraph.setFont(fontContent);
+            paragraph.setLeading(12f);
+            String roomInfo = pdfService.getRoomIdAndName(templateId);
+            paragraph.add(roomInfo + "\n");
+            String groupName = pdfService.getSubArea(templateId);
+            paragraph.add("Sensor ID : " + groupName + "\n");
+            paragraph.add("Username  : ");
+            // A non-breaking space, so the marker is not trimmed as trailing whitespace
+            Chunk usernameMarker = new Chunk("\u00a0");
+            usernameMarker.setGenericTag(USERNAME_TAG);
+            paragraph.add(usernameMarker);
+            paragraph.add("\n");
+            paragraph.add("From: " + displayStartDate + " " + displayStartTime + " to " + displayEndDate + " " + displayEndTime + "\n");
+
+            infoCell.addElement(paragraph);
+
+            // Add to table
+            headerTable.addCell(addressCell);
+            headerTable.addCell(centerCell);
+            headerTable.addCell(logoCell);
 //                headerTable.addCell(titleCell);
-                headerTable.addCell(infoCell);
-
-                document.add(headerTable);
-
-            } catch (Exception e) {
-                throw new RuntimeException("Error creating PDF header", e);
-            }
-        }
-
-        @Override
-        public void onEndPage(PdfWriter writer, Document document) {
-            PdfContentByte cb = writer.getDirectContent();
-            cb.beginText();
-            cb.setFontAndSize(baseFont, 10);
-
-            int pageNumber = writer.getPageNumber();
-            String text = "Printed On: " + LocalDateTime.now().format(DateTimeFormatter.ofPattern("dd-MM-yy HH:mm")) +
-                    "\nPrinted By: " + username +
-                    "\nPage No: " + pageNumber + " of ";
-
-            float x = document.right() - 120;
-            float y = document.bottom() - 10;
-
-            // Multiline positioning manually
-            cb.setTextMatrix(x, y + 20);
-            cb.showText("Printed On: " + LocalDateTime.now().format(DateTimeFormatter.ofPattern("dd-MM-yy HH:mm")));
+            headerTable.addCell(infoCell);
 
-            cb.setTextMatrix(x, y + 8);
-            cb.showText("Printed By: " + username);
-
-            String pageText = "Page No: " + pageNumber + " of ";
-            cb.setTextMatrix(x, y - 4);
-            cb.showText(pageText);
-
-            cb.endText();
-            cb.addTemplate(totalPageTemplate, x + baseFont.getWidthPoint(pageText, 10), y - 4);
+            return headerTable;
         }
 
-
     }
     public List<ReportDTO> getAllReports() {
-        String sql = "SELECT id, name, from_date, to_date, generated_by, generated_date, is_approved, approved_by, approved_date, assigned_review, reviewed_by, review_date, is_approver_required, assigned_approver FROM stored_reports ORDER BY generated_date DESC";
+        String sql = "SELECT id, name, from_date, to_date, generated_by, generated_date, is_approved, approved_by, approved_date, assigned_review, reviewed_by, review_date, is_approver_required, assigned_approver FROM stored_reports ORDER BY generated_at DESC, id DESC";
         return jdbcTemplate.query(sql, (rs, rowNum) -> new ReportDTO(
                 rs.getLong("id"),
                 rs.getString("name"),
@@ -727,14 +805,37 @@ public String getRoomIdAndName(Long templateId) {
                 rs.getString("assigned_approver")
         ));
     }
+    // Same as getReportById without pdf_data, for callers that stream the PDF separately.
+    public ReportDTO getReportSummaryById(Long reportId) {
+        String sql = "SELECT name, from_date, to_date, generated_by, generated_date, is_approved, approved_by, approved_date, assigned_review, reviewed_by, review_date, is_approver_required, assigned_approver FROM stored_reports WHERE id = ?";
+        List<ReportDTO> reports = jdbcTemplate.query(sql, (rs, rowNum) -> new ReportDTO(
+                reportId,
+                rs.getString("name"),
+                rs.getString("from_date"),
+                rs.getString("to_date"),
+                null,
+                rs.getString("generated_by"),
+                rs.getString("generated_date"),
+                rs.getBoolean("is_approved"),
+                rs.getString("approved_by"),
+                rs.getString("approved_date"),
+                rs.getString("assigned_review"),
+                rs.getString("reviewed_by"),
+                rs.getString("review_date"),
+                rs.getBoolean("is_approver_required"),
+                rs.getString("assigned_approver")
+        ), reportId);
+        return reports.isEmpty() ? null : reports.get(0);
+    }
+
     public ReportDTO getReportById(Long reportId) {
-        String sql = "SELECT name, from_date, to_date, pdf_data, generated_by, generated_date, is_approved, approved_by, approved_date, assigned_review, reviewed_by, review_date, is_approver_required, assigned_approver FROM stored_reports WHERE id = ?";
+        String sql = "SELECT name, from_date, to_date, pdf_data, pdf_hash, generated_by, generated_date, is_approved, approved_by, approved_date, assigned_review, reviewed_by, review_date, is_approver_required, assigned_approver FROM stored_reports WHERE id = ?";
         return jdbcTemplate.queryForObject(sql, new Object[]{reportId}, (rs, rowNum) -> new ReportDTO(
                 reportId,
                 rs.getString("name"),
                 rs.getString("from_date"),
                 rs.getString("to_date"),
-                rs.getBytes("pdf_data"),
+                reportStorage.read(rs, "pdf_data"),
                 rs.getString("generated_by"),
                 rs.getString("generated_date"),
                 rs.getBoolean("is_approved"),
@@ -755,106 +856,37 @@ public String getRoomIdAndName(Long templateId) {
         ));
     }
 
+    // Only records the review; the stamp is drawn into the PDF when it is next downloaded
     public void stampReviewInfo(Long reportId, String reviewer) throws Exception {
-        // Fetch the existing PDF from DB
-        ReportDTO reportDTO = getReportById(reportId);
-        if (reportDTO == null) {
+        long reviewTimeMillis = System.currentTimeMillis();
+        String sql = "UPDATE stored_reports SET reviewed_by = ?, review_date = ? WHERE id = ?";
+        // The stamp row commits with the report update, or neither does
+        Integer updated = transactionTemplate.execute(status -> {
+            int rows = reportRepository.update(ReportKind.MANUAL, reportId, sql, reviewer, String.valueOf(reviewTimeMillis), reportId);
+            if (rows > 0) {
+                reportStampService.addStamp(ReportKind.MANUAL, reportId, ReportStampService.REVIEW, reviewer, reviewTimeMillis);
+            }
+            return rows;
+        });
+        if (updated == null || updated == 0) {
             throw new Exception("Report not found");
         }
-
-        // Read the PDF
-        PdfReader pdfReader = new PdfReader(new ByteArrayInputStream(reportDTO.getPdfData()));
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-        PdfStamper pdfStamper = new PdfStamper(pdfReader, byteArrayOutputStream);
-
-        // Prepare review info
-        LocalDateTime now = LocalDateTime.now();
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("d-MMMM-yyyy HH:mm:ss");
-        String formattedDate = now.format(formatter);
-
-        Font font = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 10);
-        PdfPTable reviewTable = new PdfPTable(1);
-        reviewTable.setTotalWidth(180);
-        reviewTable.setWidthPercentage(100);
-
-        PdfPCell reviewCell = new PdfPCell(new Phrase("\nReviewed By:Supervisor: " + reviewer + "\nDate: " + formattedDate, font));
-        reviewCell.setBorder(Rectangle.NO_BORDER);
-        reviewCell.setPadding(10);
-        reviewCell.setHorizontalAlignment(Element.ALIGN_LEFT);
-        reviewTable.addCell(reviewCell);
-
-        // Stamp on every page
-        int totalPages = pdfReader.getNumberOfPages();
-        for (int i = 1; i <= totalPages; i++) {
-            PdfContentByte canvas = pdfStamper.getOverContent(i);
-            Rectangle pageSize = pdfReader.getPageSize(i);
-
-            float x = pageSize.getRight() - 260;
-            float y = pageSize.getBottom() + 73;
-            reviewTable.writeSelectedRows(0, -1, x, y, canvas);
-        }
-        pdfStamper.close();
-        pdfReader.close();
-
-        // Save updated PDF and update DB
-        long reviewTimeMillis = System.currentTimeMillis();
-        String sql = "UPDATE stored_reports SET pdf_data = ?, reviewed_by = ?, review_date = ? WHERE id = ?";
-        jdbcTemplate.update(sql, byteArrayOutputStream.toByteArray(), reviewer, String.valueOf(reviewTimeMillis), reportId);
     }
 
     public void approveReport(Long reportId, String username) throws Exception {
-        // Fetch the existing PDF from the database
-        ReportDTO reportDTO = getReportById(reportId);
-        if (reportDTO == null) {
+        // Same as the review: a metadata write now, the stamp is added on the next download
+        long approvedTimeMillis = System.currentTimeMillis();
+        String sql = "UPDATE stored_reports SET is_approved = ?, approved_by = ?, approved_date = ? WHERE id = ?";
+        Integer updated = transactionTemplate.execute(status -> {
+            int rows = reportRepository.update(ReportKind.MANUAL, reportId, sql, true, username, String.valueOf(approvedTimeMillis), reportId);
+            if (rows > 0) {
+                reportStampService.addStamp(ReportKind.MANUAL, reportId, ReportStampService.APPROVE, username, approvedTimeMillis);
+            }
+            return rows;
+        });
+        if (updated == null || updated == 0) {
             throw new Exception("Report not found");
         }
-
-        // Read the existing PDF
-        PdfReader pdfReader = new PdfReader(new ByteArrayInputStream(reportDTO.getPdfData()));
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-        PdfStamper pdfStamper = new PdfStamper(pdfReader, byteArrayOutputStream);
-
-        // Define the approval table
-        PdfPTable approvalTable = new PdfPTable(1);
-        approvalTable.setTotalWidth(180); // Set fixed width
-        approvalTable.setWidthPercentage(100);
-
-        Font fontTitle = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 10);
-
-        // Get the current date
-        LocalDateTime currentDateTime = LocalDateTime.now();
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("d-MMMM-yyyy HH:mm:ss");
-        String formattedDate = currentDateTime.format(formatter);
-
-        // Create Approval Cell with No Border
-        PdfPCell approvalCell = new PdfPCell(new Phrase("\nApproved By:Supervisor: " + username +"\nDate: " + formattedDate, fontTitle));
-        approvalCell.setBorder(Rectangle.NO_BORDER);
-        approvalCell.setPadding(10);
-        approvalCell.setHorizontalAlignment(Element.ALIGN_RIGHT);
-        approvalTable.addCell(approvalCell);
-
-        int totalPages = pdfReader.getNumberOfPages();
-
-        // Loop through all pages and stamp the approval table
-        for (int i = 1; i <= totalPages; i++) {
-            PdfContentByte content = pdfStamper.getOverContent(i);
-            Rectangle pageSize = pdfReader.getPageSize(i);
-            //                    float xPos = pageSize.getRight();
-            float xPos = pageSize.getRight() - approvalTable.getTotalWidth() +210;
-
-            float yPos = pageSize.getBottom() + 73;
-            approvalTable.writeSelectedRows(0, -1, xPos, yPos, content);
-        }
-
-
-        // Close the PDF
-        pdfStamper.close();
-        pdfReader.close();
-
-        // Update the database with the approved PDF
-        long approvedTimeMillis = System.currentTimeMillis();
-        String sql = "UPDATE stored_reports SET pdf_data = ?, is_approved = ?, approved_by = ?, approved_date = ? WHERE id = ?";
-        jdbcTemplate.update(sql, byteArrayOutputStream.toByteArray(), true, username, String.valueOf(approvedTimeMillis), reportId);
     }
 
     //            public void reviewReport(Long reportId, String username) throws Exception {
@@ -868,23 +900,17 @@ public String getRoomIdAndName(Long templateId) {
     }
 
     private Map<String, double[]> extractParameterRanges(Long templateId) {
-        ReportTemplate template = templateService.getById(templateId);
         Map<String, double[]> parameterRanges = new HashMap<>();
-
-        for (String parameter : template.getParameters()) {
-            String cleanParameter = extractBaseParameter(parameter); // same as you're already using
-            double fromValue = getFromValue(parameter);
-            double toValue = getToValue(parameter);
-            parameterRanges.put(cleanParameter, new double[]{fromValue, toValue});
+        for (ParameterDescriptor parameter : templateService.getById(templateId).getParameterDescriptors()) {
+            parameterRanges.put(parameter.getColumn(), new double[]{parameter.getLow(), parameter.getHigh()});
         }
-
         return parameterRanges;
     }
     public ReportDTO findLatestGeneratedReport(Long templateId, String fromDateTime, String toDateTime, String generatedBy) {
         String templateName = getReportName(templateId).replaceAll("[^a-zA-Z0-9]", "_");
         String likeName = templateName + "%";
 
-        String sql = "SELECT id, name, from_date, to_date, pdf_data, generated_by, generated_date, is_approved, " +
+        String sql = "SELECT id, name, from_date, to_date, pdf_data, pdf_hash, generated_by, generated_date, is_approved, " +
                 "approved_by, approved_date, assigned_review, reviewed_by, review_date, " +
                 "is_approver_required, assigned_approver " +
                 "FROM stored_reports WHERE name LIKE ? AND from_date = ? AND to_date = ? AND generated_by = ? " +
@@ -897,7 +923,7 @@ public String getRoomIdAndName(Long templateId) {
                         rs.getString("name"),
                         rs.getString("from_date"),
                         rs.getString("to_date"),
-                        rs.getBytes("pdf_data"),
+                        reportStorage.read(rs, "pdf_data"),
                         rs.getString("generated_by"),
                         rs.getString("generated_date"),
                         rs.getBoolean("is_approved"),
@@ -0,0 +1,62 @@
+package ncpl.bms.reports.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * The user-independent part of a rendered report: one or more PDF fragments without footers and
+ * without the name in the "Username" header line, plus where that name goes. Shared between
+ * requests through {@link ReportDocumentCache}, which deletes the files once nobody holds it.
+ */
+@Slf4j
+public class RenderedDocument {
+
+    private final List<Path> fragments;
+    private final float usernameX;
+    private final float usernameY;
+    private final long size;
+
+    // Guarded by the owning ReportDocumentCache
+    int refs;
+
+    public RenderedDocument(List<Path> fragments, float usernameX, float usernameY) throws IOException {
+        this.fragments = List.copyOf(fragments);
+        this.usernameX = usernameX;
+        this.usernameY = usernameY;
+        long total = 0;
+        for (Path fragment : fragments) {
+            total += Files.size(fragment);
+        }
+        this.size = total;
+    }
+
+    public List<Path> getFragments() {
+        return fragments;
+    }
+
+    public float getUsernameX() {
+        return usernameX;
+    }
+
+    public float getUsernameY() {
+        return usernameY;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    void delete() {
+        for (Path fragment : fragments) {
+            try {
+                Files.deleteIfExists(fragment);
+            } catch (IOException e) {
+                log.warn("Could not delete rendered fragment {}", fragment, e);
+            }
+        }
+    }
+}
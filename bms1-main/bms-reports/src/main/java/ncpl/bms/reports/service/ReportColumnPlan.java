@@ -0,0 +1,83 @@
+package ncpl.bms.reports.service;
+
+import com.lowagie.text.Element;
+import com.lowagie.text.Phrase;
+import com.lowagie.text.pdf.CMYKColor;
+import com.lowagie.text.pdf.PdfPCell;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * Per-report rendering plan for the data table: range thresholds per column and one styled prototype
+ * cell per state, resolved once so the row loop works on primitives only and copies ready-made cells.
+ */
+public class ReportColumnPlan {
+
+    // Sensor readings are mostly small integers; their text is shared instead of rebuilt per cell
+    private static final int CACHED_MIN = -128;
+    private static final String[] CACHED_TEXT = new String[2048];
+
+    static {
+        for (int i = 0; i < CACHED_TEXT.length; i++) {
+            CACHED_TEXT[i] = Integer.toString(CACHED_MIN + i);
+        }
+    }
+
+    private final double[] low;
+    private final double[] high;
+    private final String missingText;
+
+    private final PdfPCell normal;
+    private final PdfPCell below;
+    private final PdfPCell above;
+
+    /**
+     * @param missingText text for slots without a sample
+     * @param highlight   whether values outside a column's range get a red/blue background
+     */
+    public ReportColumnPlan(ReportRenderContext context, String missingText, boolean highlight) {
+        List<String> columns = context.getPivot().getColumns();
+        this.low = new double[columns.size()];
+        this.high = new double[columns.size()];
+        for (int c = 0; c < columns.size(); c++) {
+            double[] range = context.getParameterRanges().get(columns.get(c));
+            low[c] = range != null ? range[0] : Double.NEGATIVE_INFINITY;
+            high[c] = range != null ? range[1] : Double.POSITIVE_INFINITY;
+        }
+        this.missingText = missingText;
+
+        this.normal = new PdfPCell();
+        normal.setHorizontalAlignment(Element.ALIGN_CENTER);
+        this.below = new PdfPCell(normal);
+        this.above = new PdfPCell(normal);
+        if (highlight) {
+            below.setBackgroundColor(CMYKColor.BLUE);
+            above.setBackgroundColor(CMYKColor.RED);
+        }
+    }
+
+    public PdfPCell timeCell(long millis) {
+        return newCell(normal, new Timestamp(millis).toString());
+    }
+
+    public PdfPCell valueCell(int column, double value) {
+        PdfPCell prototype = value > high[column] ? above : value < low[column] ? below : normal;
+        return newCell(prototype, format((int) value));
+    }
+
+    public PdfPCell missingCell() {
+        return newCell(normal, missingText);
+    }
+
+    private static PdfPCell newCell(PdfPCell prototype, String text) {
+        PdfPCell cell = new PdfPCell(prototype);
+        cell.setPhrase(new Phrase(text));
+        return cell;
+    }
+
+    private static String format(int value) {
+        int index = value - CACHED_MIN;
+        return index >= 0 && index < CACHED_TEXT.length ? CACHED_TEXT[index] : Integer.toString(value);
+    }
+}
@@ -0,0 +1,177 @@
+package ncpl.bms.reports.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Stream;
+
+/**
+ * Shares rendered reports between identical requests. Concurrent requests for the same key wait for
+ * the one render already in flight, and documents for settled (historical) ranges are kept on disk
+ * in an LRU bounded by total size. Every caller of {@link #acquire} must {@link #release} the
+ * document once it has been copied out. Fragments live in their own directory, which is emptied on
+ * startup since nothing cached survives a restart.
+ */
+@Component
+@Slf4j
+public class ReportDocumentCache {
+
+    @Value("${report.document-cache.max-bytes:268435456}")
+    private long maxBytes;
+
+    @Value("${report.document-cache.dir:${java.io.tmpdir}/bms-report-fragments}")
+    private String dir;
+
+    private Path fragmentDir;
+
+    private final LinkedHashMap<String, RenderedDocument> documents = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Flight> inFlight = new HashMap<>();
+    private long bytes;
+
+    private long hits;
+    private long misses;
+    private long coalesced;
+    private long evictions;
+
+    private static final class Flight {
+        private final CompletableFuture<RenderedDocument> result = new CompletableFuture<>();
+        private int waiters;
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        fragmentDir = Files.createDirectories(Paths.get(dir));
+        int deleted = 0;
+        try (Stream<Path> files = Files.list(fragmentDir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (Files.deleteIfExists(file)) {
+                    deleted++;
+                }
+            }
+        }
+        log.info("Report fragments in {}, {} left over from the last run deleted", fragmentDir, deleted);
+    }
+
+    // A new empty file for a rendered fragment
+    public Path newFragmentFile(String prefix) throws IOException {
+        return Files.createTempFile(fragmentDir, prefix, ".pdf");
+    }
+
+    /**
+     * Returns the document for {@code key}: from the cache, from a render already running for the same
+     * key, or by running {@code render}. With {@code cacheable} a new render is kept for later requests.
+     */
+    public RenderedDocument acquire(String key, boolean cacheable, Callable<RenderedDocument> render) throws Exception {
+        Flight flight;
+        boolean owner = false;
+        synchronized (this) {
+            RenderedDocument cached = documents.get(key);
+            if (cached != null) {
+                hits++;
+                cached.refs++;
+                return cached;
+            }
+            flight = inFlight.get(key);
+            if (flight == null) {
+                misses++;
+                flight = new Flight();
+                inFlight.put(key, flight);
+                owner = true;
+            } else {
+                coalesced++;
+                flight.waiters++;
+            }
+        }
+
+        if (owner) {
+            // Rendered outside the lock; waiters for this key block on the future meanwhile
+            RenderedDocument document;
+            try {
+                document = render.call();
+            } catch (Throwable e) {
+                // Errors too, or the key would stay in flight and every later request for it would hang
+                synchronized (this) {
+                    inFlight.remove(key);
+                }
+                flight.result.completeExceptionally(e);
+                throw e;
+            }
+            synchronized (this) {
+                inFlight.remove(key);
+                document.refs = 1 + flight.waiters;
+                if (cacheable && document.getSize() <= maxBytes) {
+                    document.refs++;
+                    documents.put(key, document);
+                    bytes += document.getSize();
+                    evictOverflow();
+                }
+            }
+            flight.result.complete(document);
+            return document;
+        }
+
+        try {
+            return flight.result.get();
+        } catch (InterruptedException e) {
+            // This waiter was already counted in the document's refs, so give its reference back once it exists
+            flight.result.thenAccept(this::release);
+            throw e;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+
+    public synchronized void release(RenderedDocument document) {
+        if (--document.refs == 0) {
+            document.delete();
+        }
+    }
+
+    public synchronized Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("size", (long) documents.size());
+        stats.put("bytes", bytes);
+        stats.put("inFlight", (long) inFlight.size());
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("coalesced", coalesced);
+        stats.put("evictions", evictions);
+        return stats;
+    }
+
+    public synchronized void invalidateAll() {
+        log.info("Evicting all cached report documents");
+        for (RenderedDocument document : documents.values()) {
+            release(document);
+        }
+        documents.clear();
+        bytes = 0;
+    }
+
+    private void evictOverflow() {
+        Iterator<RenderedDocument> it = documents.values().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            RenderedDocument eldest = it.next();
+            it.remove();
+            bytes -= eldest.getSize();
+            evictions++;
+            release(eldest);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package ncpl.bms.reports.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.List;
+
+/**
+ * Serves stored report PDFs with HTTP validation and ranges. The strong ETag is the content hash plus
+ * the stamp version, or the row id plus the stamp version for PDFs kept as blobs, so it is known
+ * without reading the PDF. A matching If-None-Match gets a 304 and a single Range a 206 with only
+ * that part read from disk or the database.
+ */
+@Service
+public class ReportDownloadService {
+
+    @Autowired
+    private ReportStorage reportStorage;
+
+    @Autowired
+    private ReportStampService reportStampService;
+
+    public ResponseEntity<StreamingResponseBody> download(String reportTable, Object reportId, String contentDisposition, HttpHeaders request) {
+        // Signed-off reports are served from their stamped rendition, built here on the first download
+        Long renditionId = reportStampService.getRendition(reportTable, reportId);
+        String table = renditionId != null ? ReportStampService.RENDITIONS : reportTable;
+        Object id = renditionId != null ? renditionId : reportId;
+        ReportStorage.PdfInfo info = reportStorage.getInfo(table, id);
+        if (info == null) {
+            return ResponseEntity.notFound().build();
+        }
+        if (info.getSize() == 0) {
+            return ResponseEntity.noContent().build();
+        }
+
+        String etag = info.getHash() != null
+                ? "\"" + info.getHash() + "-" + info.getVersion() + "\""
+                : "\"" + table + "-" + id + "-" + info.getVersion() + "\"";
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag(etag);
+        // Browsers revalidate every time; an unchanged report then costs one small query and a 304
+        headers.setCacheControl(CacheControl.noCache());
+        if (matches(request.getIfNoneMatch(), etag)) {
+            return new ResponseEntity<>(headers, HttpStatus.NOT_MODIFIED);
+        }
+
+        headers.setContentType(MediaType.APPLICATION_PDF);
+        headers.set(HttpHeaders.CONTENT_DISPOSITION, contentDisposition);
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+        long size = info.getSize();
+
+        HttpRange range = getRange(request, etag);
+        if (range != null) {
+            long start;
+            long end;
+            try {
+                start = range.getRangeStart(size);
+                end = range.getRangeEnd(size);
+            } catch (IllegalArgumentException e) {
+                return notSatisfiable(headers, size);
+            }
+            // HttpRange clamps the end to the size but lets a start past it through
+            if (start >= size) {
+                return notSatisfiable(headers, size);
+            }
+            long length = end - start + 1;
+            headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size);
+            headers.setContentLength(length);
+            StreamingResponseBody body = out -> reportStorage.writeTo(table, id, start, length, out);
+            return new ResponseEntity<>(body, headers, HttpStatus.PARTIAL_CONTENT);
+        }
+
+        headers.setContentLength(size);
+        StreamingResponseBody body = out -> reportStorage.writeTo(table, id, out);
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
+    }
+
+    private static ResponseEntity<StreamingResponseBody> notSatisfiable(HttpHeaders headers, long size) {
+        headers.set(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+        return new ResponseEntity<>(headers, HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+    }
+
+    // If-None-Match uses the weak comparison, so W/ prefixes are ignored.
+    private static boolean matches(List<String> ifNoneMatch, String etag) {
+        for (String tag : ifNoneMatch) {
+            if (tag.equals("*") || tag.replaceFirst("^W/", "").equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // The requested range, or null to send the whole PDF: no or malformed Range, several ranges, or an If-Range for other content.
+    private static HttpRange getRange(HttpHeaders request, String etag) {
+        String rangeHeader = request.getFirst(HttpHeaders.RANGE);
+        if (rangeHeader == null) {
+            return null;
+        }
+        String ifRange = request.getFirst(HttpHeaders.IF_RANGE);
+        if (ifRange != null && !ifRange.equals(etag)) {
+            return null;
+        }
+        try {
+            List<HttpRange> ranges = HttpRange.parseRanges(rangeHeader);
+            return ranges.size() == 1 ? ranges.get(0) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package ncpl.bms.reports.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Reads report source tables concurrently. The pool size is the global cap shared by every report,
+ * so it should stay below the Hikari pool size; each report additionally keeps at most
+ * report.fetch.per-report-parallelism queries in flight.
+ */
+@Component
+@Slf4j
+public class ReportFetchExecutor {
+
+    @Value("${report.fetch.global-parallelism:6}")
+    private int globalParallelism;
+
+    @Value("${report.fetch.per-report-parallelism:3}")
+    private int perReportParallelism;
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        executor = Executors.newFixedThreadPool(Math.max(1, globalParallelism), new CustomizableThreadFactory("report-fetch-"));
+        log.info("Report fetch executor started: global={}, per report={}", globalParallelism, perReportParallelism);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Applies the fetcher to every table and returns the results in the same order as the tables,
+     * whatever order the queries finish in.
+     */
+    public <T> List<T> fetchAll(List<String> tables, Function<String, T> fetcher) {
+        List<T> results = new ArrayList<>(tables.size());
+        for (int i = 0; i < tables.size(); i++) {
+            results.add(null);
+        }
+        if (tables.isEmpty()) {
+            return results;
+        }
+
+        CompletionService<Integer> completion = new ExecutorCompletionService<>(executor);
+        List<Future<Integer>> futures = new ArrayList<>();
+        int limit = Math.max(1, perReportParallelism);
+        int next = 0;
+        int inFlight = 0;
+        try {
+            while (next < tables.size() || inFlight > 0) {
+                while (inFlight < limit && next < tables.size()) {
+                    final int index = next++;
+                    futures.add(completion.submit(() -> {
+                        results.set(index, fetcher.apply(tables.get(index)));
+                        return index;
+                    }));
+                    inFlight++;
+                }
+                completion.take().get();
+                inFlight--;
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(f -> f.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while fetching report data", e);
+        } catch (ExecutionException e) {
+            futures.forEach(f -> f.cancel(true));
+            throw new RuntimeException("Error fetching report data: " + e.getCause().getMessage(), e.getCause());
+        }
+        return results;
+    }
+}
@@ -0,0 +1,98 @@
+package ncpl.bms.reports.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Directory of report PDFs named by the SHA-256 of their content, e.g. {@code 3f/3f9a…e1.pdf}.
+ * Identical documents share one file and a stored file never changes, so it can be served straight
+ * from disk.
+ */
+@Component
+@Slf4j
+public class ReportFileStore {
+
+    @Value("${report.storage.dir:report-store}")
+    private String dir;
+
+    /** Copies {@code in} into the store and returns its hash. */
+    public String put(InputStream in) throws IOException {
+        Path root = Paths.get(dir);
+        Files.createDirectories(root);
+        Path temp = Files.createTempFile(root, "upload-", ".tmp");
+        try {
+            MessageDigest digest = sha256();
+            try (InputStream digestIn = new DigestInputStream(in, digest);
+                 OutputStream out = Files.newOutputStream(temp)) {
+                digestIn.transferTo(out);
+            }
+            String hash = HexFormat.of().formatHex(digest.digest());
+            Path target = resolve(hash);
+            if (!Files.exists(target)) {
+                Files.createDirectories(target.getParent());
+                // Same directory tree, so the rename is atomic and readers never see a partial file
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            }
+            return hash;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    public Path resolve(String hash) {
+        if (!hash.matches("[0-9a-f]{64}")) {
+            throw new IllegalArgumentException("Not a content hash: " + hash);
+        }
+        return Paths.get(dir, hash.substring(0, 2), hash + ".pdf");
+    }
+
+    public void delete(String hash) throws IOException {
+        Files.deleteIfExists(resolve(hash));
+    }
+
+    public byte[] read(String hash) throws IOException {
+        return Files.readAllBytes(resolve(hash));
+    }
+
+    /** Sends the file to {@code out} with FileChannel.transferTo, without copying it through the heap. */
+    public void transferTo(String hash, OutputStream out) throws IOException {
+        transferTo(hash, 0, Long.MAX_VALUE, out);
+    }
+
+    // Same for {@code length} bytes from {@code offset}, cut off at the end of the file.
+    public void transferTo(String hash, long offset, long length, OutputStream out) throws IOException {
+        try (FileChannel channel = FileChannel.open(resolve(hash), StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(out);
+            long position = offset;
+            long end = offset + Math.min(length, channel.size() - offset);
+            while (position < end) {
+                position += channel.transferTo(position, end - position, target);
+            }
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
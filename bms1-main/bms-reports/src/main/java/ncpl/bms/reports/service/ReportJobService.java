@@ -0,0 +1,191 @@
+package ncpl.bms.reports.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.sql.PreparedStatement;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs PDF exports in the background. Jobs are rows in report_jobs, so the status survives restarts,
+ * and a fixed pool with a bounded queue executes them; a full queue rejects new jobs instead of piling
+ * up work. Jobs left QUEUED or RUNNING by a shutdown are queued again on startup; a job is marked DONE
+ * in the transaction that stores its report, so one whose report was stored is never run twice.
+ */
+@Service
+@Slf4j
+public class ReportJobService implements CommandLineRunner {
+
+    public static final String QUEUED = "QUEUED";
+    public static final String RUNNING = "RUNNING";
+    public static final String DONE = "DONE";
+    public static final String FAILED = "FAILED";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PdfService pdfService;
+
+    @Value("${report.jobs.workers:2}")
+    private int workers;
+
+    @Value("${report.jobs.queue-capacity:20}")
+    private int queueCapacity;
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void init() {
+        executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("report-job-"));
+    }
+
+    @Override
+    public void run(String... args) {
+        jdbcTemplate.execute("IF NOT EXISTS (SELECT * FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = 'report_jobs') BEGIN " +
+                "CREATE TABLE report_jobs (id BIGINT IDENTITY(1,1) PRIMARY KEY, template_id BIGINT NOT NULL, " +
+                "from_date BIGINT NOT NULL, to_date BIGINT NOT NULL, username VARCHAR(255), assigned_to VARCHAR(255), " +
+                "assigned_approver VARCHAR(255), status VARCHAR(16) NOT NULL, stage VARCHAR(32), progress INT NOT NULL, " +
+                "report_id BIGINT, error VARCHAR(1000), created_at datetime2 NOT NULL, updated_at datetime2 NOT NULL); END;");
+
+        List<Long> pending = jdbcTemplate.queryForList(
+                "SELECT id FROM report_jobs WHERE status IN ('" + QUEUED + "', '" + RUNNING + "') ORDER BY id", Long.class);
+        for (Long jobId : pending) {
+            jdbcTemplate.update("UPDATE report_jobs SET status = ?, stage = NULL, progress = 0, updated_at = SYSDATETIME() WHERE id = ?",
+                    QUEUED, jobId);
+            if (!enqueue(jobId)) {
+                fail(jobId, "Job queue was full when the job was resumed after a restart");
+            }
+        }
+        log.info("Report job pool started with {} workers, queue {}; {} job(s) resumed", workers, queueCapacity, pending.size());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Interrupted jobs stay RUNNING in the table and are picked up again on the next start
+        executor.shutdownNow();
+    }
+
+    /**
+     * Records a job and queues it.
+     *
+     * @return the job id
+     * @throws RejectedExecutionException when the queue is full; the job row is marked FAILED
+     */
+    public Long submit(Long templateId, long fromDate, long toDate, String username, String assignedTo, String assignedApprover) {
+        String sql = "INSERT INTO report_jobs (template_id, from_date, to_date, username, assigned_to, assigned_approver, " +
+                "status, progress, created_at, updated_at) VALUES (?, ?, ?, ?, ?, ?, ?, 0, SYSDATETIME(), SYSDATETIME())";
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.update(connection -> {
+            PreparedStatement ps = connection.prepareStatement(sql, new String[]{"id"});
+            ps.setLong(1, templateId);
+            ps.setLong(2, fromDate);
+            ps.setLong(3, toDate);
+            ps.setString(4, username);
+            ps.setString(5, assignedTo);
+            ps.setString(6, assignedApprover);
+            ps.setString(7, QUEUED);
+            return ps;
+        }, keyHolder);
+        Long jobId = keyHolder.getKey().longValue();
+
+        if (!enqueue(jobId)) {
+            fail(jobId, "Job queue is full");
+            throw new RejectedExecutionException("Report job queue is full (" + queueCapacity + " waiting)");
+        }
+        log.info("Report job {} queued for template {}", jobId, templateId);
+        return jobId;
+    }
+
+    // id, status, stage, progress, reportId, error and timestamps; null when the job does not exist
+    public Map<String, Object> getStatus(Long jobId) {
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                "SELECT id, template_id, status, stage, progress, report_id, error, created_at, updated_at FROM report_jobs WHERE id = ?", jobId);
+        if (rows.isEmpty()) {
+            return null;
+        }
+        Map<String, Object> row = rows.get(0);
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("id", row.get("id"));
+        status.put("templateId", row.get("template_id"));
+        status.put("status", row.get("status"));
+        status.put("stage", row.get("stage"));
+        status.put("progress", row.get("progress"));
+        status.put("reportId", row.get("report_id"));
+        status.put("error", row.get("error"));
+        status.put("createdAt", row.get("created_at"));
+        status.put("updatedAt", row.get("updated_at"));
+        return status;
+    }
+
+    private boolean enqueue(Long jobId) {
+        try {
+            executor.execute(() -> execute(jobId));
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    private void execute(Long jobId) {
+        Map<String, Object> job = jdbcTemplate.queryForMap(
+                "SELECT template_id, from_date, to_date, username, assigned_to, assigned_approver FROM report_jobs WHERE id = ?", jobId);
+        jdbcTemplate.update("UPDATE report_jobs SET status = ?, updated_at = SYSDATETIME() WHERE id = ?", RUNNING, jobId);
+        try {
+            Long reportId = pdfService.generatePdf(
+                    ((Number) job.get("template_id")).longValue(),
+                    String.valueOf(job.get("from_date")),
+                    String.valueOf(job.get("to_date")),
+                    (String) job.get("username"),
+                    (String) job.get("assigned_to"),
+                    (String) job.get("assigned_approver"),
+                    null,
+                    new ReportProgressListener() {
+                        @Override
+                        public void update(String stage, int percent) {
+                            jdbcTemplate.update("UPDATE report_jobs SET stage = ?, progress = ?, updated_at = SYSDATETIME() WHERE id = ?",
+                                    stage, percent, jobId);
+                        }
+
+                        @Override
+                        public void stored(Long reportId) {
+                            jdbcTemplate.update("UPDATE report_jobs SET status = ?, stage = NULL, progress = 100, report_id = ?, " +
+                                    "updated_at = SYSDATETIME() WHERE id = ?", DONE, reportId, jobId);
+                        }
+                    });
+            log.info("Report job {} finished, stored report {}", jobId, reportId);
+        } catch (Throwable e) {
+            if (executor.isShutdown()) {
+                log.warn("Report job {} interrupted by shutdown, it will be resumed on the next start", jobId);
+                return;
+            }
+            // Errors too, or the job would be left RUNNING until the next restart ran it again
+            log.error("Report job {} failed", jobId, e);
+            fail(jobId, e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+            if (e instanceof Error) {
+                throw (Error) e;
+            }
+        }
+    }
+
+    private void fail(Long jobId, String error) {
+        String message = error == null ? "Report generation failed" : error.length() > 1000 ? error.substring(0, 1000) : error;
+        jdbcTemplate.update("UPDATE report_jobs SET status = ?, error = ?, updated_at = SYSDATETIME() WHERE id = ?", FAILED, message, jobId);
+    }
+}
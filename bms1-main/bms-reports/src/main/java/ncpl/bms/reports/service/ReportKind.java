@@ -0,0 +1,74 @@
+package ncpl.bms.reports.service;
+
+/**
+ * The kinds of stored report and the table each one lives in. The PDF and the kind-specific columns
+ * stay in that table; {@link ReportRepository} mirrors the common fields into report_metadata.
+ */
+public enum ReportKind {
+    MANUAL("stored_reports"),
+    DAILY("stored_reports_daily"),
+    WEEKLY("stored_reports_weekly"),
+    MONTHLY("stored_reports_monthly"),
+    ALARM("StoredAlarmReport"),
+    AUDIT("StoredAuditReport");
+
+    private final String table;
+
+    ReportKind(String table) {
+        this.table = table;
+    }
+
+    public static ReportKind ofTable(String table) {
+        for (ReportKind kind : values()) {
+            if (kind.table.equalsIgnoreCase(table)) {
+                return kind;
+            }
+        }
+        throw new IllegalArgumentException("Not a report table: " + table);
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    /**
+     * SELECT of this kind's table yielding one row per report with the columns of
+     * {@link ReportRepository#COLUMNS}, in that order.
+     */
+    public String metadataSql() {
+        switch (this) {
+            case ALARM:
+                // Alarm reports are reviewed by whoever opens them, they are never assigned or approved
+                return "SELECT id AS source_id, NULL AS template_id, report_name AS name, NULL AS from_date, NULL AS to_date, " +
+                        "generated_by, generated_on AS generated_at, NULL AS assigned_review, reviewed_by, " +
+                        "CAST(0 AS BIT) AS is_approver_required, NULL AS assigned_approver, NULL AS approved_by, " +
+                        "pdf_hash, pdf_size FROM " + table;
+            case AUDIT:
+                return "SELECT id AS source_id, NULL AS template_id, report_name AS name, NULL AS from_date, NULL AS to_date, " +
+                        "NULL AS generated_by, generated_on AS generated_at, NULL AS assigned_review, NULL AS reviewed_by, " +
+                        "CAST(0 AS BIT) AS is_approver_required, NULL AS assigned_approver, " +
+                        "NULL AS approved_by, pdf_hash, pdf_size FROM " + table;
+            default:
+                // from_date is a datetime in stored_reports and a string of millis in the scheduled tables
+                return "SELECT id AS source_id, template_id, name, CONVERT(VARCHAR(50), from_date, 121) AS from_date, " +
+                        "CONVERT(VARCHAR(50), to_date, 121) AS to_date, generated_by, generated_at, assigned_review, reviewed_by, " +
+                        "COALESCE(is_approver_required, CAST(0 AS BIT)) AS is_approver_required, assigned_approver, approved_by, " +
+                        "pdf_hash, pdf_size FROM " + table;
+        }
+    }
+
+    /**
+     * SELECT of this kind's review and approval times as epoch millis text (source_id, review_date,
+     * approved_date), or null when the kind has neither.
+     */
+    public String epochMillisSql() {
+        switch (this) {
+            case ALARM:
+                return "SELECT id AS source_id, review_date, NULL AS approved_date FROM " + table;
+            case AUDIT:
+                return null;
+            default:
+                return "SELECT id AS source_id, review_date, approved_date FROM " + table;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package ncpl.bms.reports.service;
+
+import lombok.extern.slf4j.Slf4j;
+import ncpl.bms.reports.model.dto.ReportDTO;
+import ncpl.bms.reports.model.dto.ReportListFilter;
+import ncpl.bms.reports.model.dto.ReportPage;
+import ncpl.bms.reports.model.dto.StoredAlarmReportDTO;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Paged listings of the stored report tables, newest first. Pages are fetched by keyset: the next page
+ * starts below the (time, id) of the last row, so every page is an index seek whatever its depth.
+ * The generated-report tables keep their time as a string of epoch millis in {@code generated_date};
+ * a typed, indexed {@code generated_at} column is added next to it and backfilled at startup.
+ */
+@Service
+@Slf4j
+@Order(2)
+public class ReportListingService implements CommandLineRunner {
+
+    public static final List<String> REPORT_TABLES = List.of(
+            "stored_reports", "stored_reports_daily", "stored_reports_weekly", "stored_reports_monthly");
+
+    private static final String ALARM_TABLE = "StoredAlarmReport";
+
+    // generated_at of rows whose generated_date is not a number, so they sort last
+    static final Timestamp UNKNOWN_TIME = Timestamp.valueOf("1970-01-01 00:00:00");
+
+    private static final int DEFAULT_LIMIT = 50;
+    private static final int MAX_LIMIT = 500;
+
+    // Filtered totals are counted up to this many rows, beyond that only "at least" is reported
+    @Value("${report.listing.count-cap:1000}")
+    private int countCap;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void run(String... args) {
+        for (String table : REPORT_TABLES) {
+            if (!tableExists(table)) {
+                continue;
+            }
+            jdbcTemplate.execute("IF NOT EXISTS (SELECT * FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_NAME = '" + table + "' AND COLUMN_NAME = 'generated_at') " +
+                    "ALTER TABLE " + table + " ADD generated_at datetime2 NULL, template_id BIGINT NULL");
+            backfillGeneratedAt(table);
+            createIndex(table, "generated_at");
+        }
+        if (tableExists(ALARM_TABLE)) {
+            createIndex(ALARM_TABLE, "generated_on");
+        }
+    }
+
+    // Rows written before the column existed, or by anything that only sets generated_date. Converted in Java,
+    // so they get the same JVM-local time as the generated_at the services write and the listing filters use.
+    private void backfillGeneratedAt(String table) {
+        List<Object[]> rows = new ArrayList<>();
+        jdbcTemplate.query("SELECT id, generated_date FROM " + table + " WHERE generated_at IS NULL", rs -> {
+            Timestamp generatedAt = ReportRepository.fromEpochMillis(rs.getString("generated_date"));
+            rows.add(new Object[]{generatedAt != null ? generatedAt : UNKNOWN_TIME, rs.getLong("id")});
+        });
+        if (!rows.isEmpty()) {
+            jdbcTemplate.batchUpdate("UPDATE " + table + " SET generated_at = ? WHERE id = ?", rows);
+            log.info("Backfilled generated_at of {} rows in {}", rows.size(), table);
+        }
+    }
+
+    public ReportPage<ReportDTO> listReports(String table, ReportListFilter filter) {
+        if (!REPORT_TABLES.contains(table)) {
+            throw new IllegalArgumentException("Not a report table: " + table);
+        }
+        List<String> where = new ArrayList<>();
+        List<Object> args = new ArrayList<>();
+        if (filter.getApproved() != null) {
+            where.add(filter.getApproved() ? "is_approved = 1" : "(is_approved = 0 OR is_approved IS NULL)");
+        }
+        if (filter.getReviewedBy() != null) {
+            where.add("reviewed_by = ?");
+            args.add(filter.getReviewedBy());
+        }
+        if (filter.getTemplateId() != null) {
+            where.add("template_id = ?");
+            args.add(filter.getTemplateId());
+        }
+        addCommonFilters(filter, "name", "generated_at", where, args);
+
+        String columns = "id, name, from_date, to_date, generated_by, generated_date, is_approved, approved_by, approved_date, " +
+                "assigned_review, reviewed_by, review_date, is_approver_required, assigned_approver";
+        return page(table, "generated_at", columns, where, args, filter, (rs, rowNum) -> new ReportDTO(
+                rs.getLong("id"),
+                rs.getString("name"),
+                rs.getString("from_date"),
+                rs.getString("to_date"),
+                null,
+                rs.getString("generated_by"),
+                rs.getString("generated_date"),
+                rs.getBoolean("is_approved"),
+                rs.getString("approved_by"),
+                rs.getString("approved_date"),
+                rs.getString("assigned_review"),
+                rs.getString("reviewed_by"),
+                rs.getString("review_date"),
+                rs.getBoolean("is_approver_required"),
+                rs.getString("assigned_approver")
+        ));
+    }
+
+    // Alarm reports are only reviewed, so "approved" filters on whether they have been.
+    public ReportPage<StoredAlarmReportDTO> listAlarmReports(ReportListFilter filter) {
+        List<String> where = new ArrayList<>();
+        List<Object> args = new ArrayList<>();
+        if (filter.getApproved() != null) {
+            where.add(filter.getApproved() ? "reviewed_by IS NOT NULL" : "reviewed_by IS NULL");
+        }
+        if (filter.getReviewedBy() != null) {
+            where.add("reviewed_by = ?");
+            args.add(filter.getReviewedBy());
+        }
+        addCommonFilters(filter, "report_name", "generated_on", where, args);
+
+        return page(ALARM_TABLE, "generated_on", "id, report_name, generated_on, reviewed_by, review_date, generated_by",
+                where, args, filter, (rs, rowNum) -> {
+                    StoredAlarmReportDTO dto = new StoredAlarmReportDTO();
+                    dto.setId(rs.getInt("id"));
+                    dto.setReportName(rs.getString("report_name"));
+                    dto.setGeneratedOn(rs.getTimestamp("generated_on"));
+                    long reviewDateMillis = rs.getLong("review_date");
+                    dto.setReviewDate(reviewDateMillis > 0 ? new Timestamp(reviewDateMillis) : null);
+                    dto.setGeneratedBy(rs.getString("generated_by"));
+                    dto.setReviewedBy(rs.getString("reviewed_by"));
+                    return dto;
+                });
+    }
+
+    private static void addCommonFilters(ReportListFilter filter, String nameColumn, String timeColumn,
+                                         List<String> where, List<Object> args) {
+        if (filter.getName() != null && !filter.getName().isBlank()) {
+            where.add(nameColumn + " LIKE ?");
+            args.add("%" + filter.getName().replace("[", "[[]").replace("%", "[%]").replace("_", "[_]") + "%");
+        }
+        if (filter.getFrom() != null) {
+            where.add(timeColumn + " >= ?");
+            args.add(new Timestamp(filter.getFrom()));
+        }
+        if (filter.getTo() != null) {
+            where.add(timeColumn + " <= ?");
+            args.add(new Timestamp(filter.getTo()));
+        }
+    }
+
+    private <T> ReportPage<T> page(String table, String timeColumn, String columns, List<String> where, List<Object> args,
+                                   ReportListFilter filter, RowMapper<T> mapper) {
+        int limit = filter.getLimit() == null ? DEFAULT_LIMIT : Math.max(1, Math.min(filter.getLimit(), MAX_LIMIT));
+
+        List<String> pageWhere = new ArrayList<>(where);
+        List<Object> pageArgs = new ArrayList<>(args);
+        if (filter.getCursor() != null && !filter.getCursor().isEmpty()) {
+            // Cursor is "<time>_<id>" of the last row of the previous page
+            Timestamp time;
+            long id;
+            try {
+                int split = filter.getCursor().lastIndexOf('_');
+                time = Timestamp.valueOf(LocalDateTime.parse(filter.getCursor().substring(0, split)));
+                id = Long.parseLong(filter.getCursor().substring(split + 1));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid cursor: " + filter.getCursor());
+            }
+            pageWhere.add("(" + timeColumn + " < ? OR (" + timeColumn + " = ? AND id < ?))");
+            pageArgs.add(time);
+            pageArgs.add(time);
+            pageArgs.add(id);
+        }
+
+        // One row more than the page tells whether there is a next page
+        String sql = "SELECT TOP (" + (limit + 1) + ") " + columns + ", " + timeColumn + " AS page_time FROM " + table +
+                whereClause(pageWhere) + " ORDER BY " + timeColumn + " DESC, id DESC";
+        List<String> keys = new ArrayList<>();
+        List<T> items = jdbcTemplate.query(sql, (rs, rowNum) -> {
+            Timestamp time = rs.getTimestamp("page_time");
+            // Rows without a time sort last and end the listing
+            keys.add(time != null ? time.toLocalDateTime() + "_" + rs.getLong("id") : null);
+            return mapper.mapRow(rs, rowNum);
+        }, pageArgs.toArray());
+
+        String nextCursor = null;
+        if (items.size() > limit) {
+            items = items.subList(0, limit);
+            nextCursor = keys.get(limit - 1);
+        }
+
+        if (where.isEmpty()) {
+            Long rows = tableRowCount(table);
+            if (rows != null) {
+                return new ReportPage<>(items, nextCursor, rows, false);
+            }
+        }
+        Long counted = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM (SELECT TOP (" + countCap + ") id FROM " + table +
+                whereClause(where) + ") capped", Long.class, args.toArray());
+        long total = counted != null ? counted : 0;
+        return new ReportPage<>(items, nextCursor, total, total < countCap);
+    }
+
+    // Row count kept by SQL Server for the table, without touching its rows; null without VIEW DATABASE STATE.
+    private Long tableRowCount(String table) {
+        try {
+            return jdbcTemplate.queryForObject("SELECT SUM(row_count) FROM sys.dm_db_partition_stats " +
+                    "WHERE object_id = OBJECT_ID(?) AND index_id IN (0, 1)", Long.class, table);
+        } catch (Exception e) {
+            log.debug("Partition stats not readable for {}", table, e);
+            return null;
+        }
+    }
+
+    private static String whereClause(List<String> conditions) {
+        return conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions);
+    }
+
+    private boolean tableExists(String table) {
+        Integer found = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = ?", Integer.class, table);
+        return found != null && found > 0;
+    }
+
+    private void createIndex(String table, String timeColumn) {
+        String index = "IX_" + table + "_" + timeColumn;
+        jdbcTemplate.execute("IF NOT EXISTS (SELECT * FROM sys.indexes WHERE name = '" + index + "' AND object_id = OBJECT_ID('" + table + "')) " +
+                "CREATE INDEX " + index + " ON " + table + " (" + timeColumn + " DESC, id DESC)");
+    }
+}
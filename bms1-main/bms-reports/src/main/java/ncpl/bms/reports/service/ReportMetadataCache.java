@@ -0,0 +1,95 @@
+package ncpl.bms.reports.service;
+
+import lombok.extern.slf4j.Slf4j;
+import ncpl.bms.reports.model.dao.ReportTemplate;
+import ncpl.bms.reports.repository.ReportTemplateRepository;
+import ncpl.bms.reports.util.ExpiringLruCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Templates and the beckman_room_data header names, which PDF rendering reads on every page.
+ * Entries expire after a TTL; template edits and deletes evict their entry right away. The cache holds
+ * a detached copy of each template and every caller gets its own copy, so no entity is shared between threads.
+ */
+@Component
+@Slf4j
+public class ReportMetadataCache {
+
+    private static final String HEADER_MAP_KEY = "beckman_room_data";
+
+    @Autowired
+    private ReportTemplateRepository reportTemplateRepo;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${report.metadata-cache.max-size:500}")
+    private int maxSize;
+
+    @Value("${report.metadata-cache.ttl-ms:300000}")
+    private long ttlMillis;
+
+    private ExpiringLruCache<Long, ReportTemplate> templates;
+    private ExpiringLruCache<String, Map<String, String>> headerMaps;
+
+    @PostConstruct
+    public void init() {
+        templates = new ExpiringLruCache<>(maxSize, ttlMillis);
+        headerMaps = new ExpiringLruCache<>(1, ttlMillis);
+    }
+
+    public ReportTemplate getTemplate(Long id) {
+        ReportTemplate template = templates.get(id, key -> reportTemplateRepo.findById(key).map(ReportTemplate::copy).orElse(null));
+        if (template == null) {
+            throw new RuntimeException("Template not found with id " + id);
+        }
+        return template.copy();
+    }
+
+    // Source table name -> display header
+    public Map<String, String> getHeaderMap() {
+        return headerMaps.get(HEADER_MAP_KEY, key -> {
+            String sql = "SELECT TABLE_NAME, Header_Name FROM beckman_room_data";
+            List<Map<String, Object>> rows = jdbcTemplate.queryForList(sql);
+            Map<String, String> map = new HashMap<>();
+
+            for (Map<String, Object> row : rows) {
+                String tableName = String.valueOf(row.get("TABLE_NAME")).trim();
+                String headerName = String.valueOf(row.get("Header_Name")).trim();
+                map.put(tableName, headerName);
+            }
+            return Collections.unmodifiableMap(map);
+        });
+    }
+
+    public void invalidateTemplate(Long id) {
+        templates.invalidate(id);
+    }
+
+    public void invalidateHeaderMap() {
+        headerMaps.invalidateAll();
+    }
+
+    public void invalidateAll() {
+        log.info("Evicting all cached report metadata");
+        templates.invalidateAll();
+        headerMaps.invalidateAll();
+    }
+
+    public Map<String, Map<String, Long>> getStats() {
+        Map<String, Map<String, Long>> stats = new LinkedHashMap<>();
+        stats.put("templates", templates.getStats());
+        stats.put("headerMap", headerMaps.getStats());
+        return stats;
+    }
+}
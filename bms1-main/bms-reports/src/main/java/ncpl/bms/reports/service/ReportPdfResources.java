@@ -0,0 +1,47 @@
+package ncpl.bms.reports.service;
+
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.Image;
+import com.lowagie.text.pdf.BaseFont;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Fonts and images shared by every report, loaded once at startup instead of per report or per page.
+ */
+@Component
+@Slf4j
+public class ReportPdfResources {
+
+    private static final String LOGO_PATH = "static/images/logo1.png";
+
+    private Image logo;
+    private BaseFont helvetica;
+
+    @PostConstruct
+    public void load() throws DocumentException, IOException {
+        helvetica = BaseFont.createFont(BaseFont.HELVETICA, BaseFont.WINANSI, BaseFont.NOT_EMBEDDED);
+        try (InputStream in = new ClassPathResource(LOGO_PATH).getInputStream()) {
+            logo = Image.getInstance(in.readAllBytes());
+        } catch (IOException e) {
+            log.error("Could not load report logo {}", LOGO_PATH, e);
+        }
+    }
+
+    /**
+     * A copy of the logo that callers may scale and align freely, or null when it could not be loaded.
+     * Copies share the decoded image, so a PDF embeds it once however many pages show it.
+     */
+    public Image getLogo() {
+        return logo == null ? null : Image.getInstance(logo);
+    }
+
+    public BaseFont getHelvetica() {
+        return helvetica;
+    }
+}
@@ -0,0 +1,99 @@
+package ncpl.bms.reports.service;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Columnar report grid: one primitive array per column, indexed by 10-minute slot.
+ * Missing samples are stored as NaN, so memory is slots x columns x 8 bytes.
+ */
+public class ReportPivot {
+
+    public static final long SLOT_MILLIS = 10 * 60 * 1000L;
+
+    private final long firstSlot;
+    private final int slotCount;
+    private final List<String> columns;
+    private final double[][] values;
+
+    public ReportPivot(long fromMillis, long toMillis, List<String> columns) {
+        this.firstSlot = firstSlotAtOrAfter(fromMillis);
+        this.slotCount = toMillis < firstSlot ? 0 : (int) ((toMillis - firstSlot) / SLOT_MILLIS) + 1;
+        this.columns = Collections.unmodifiableList(columns);
+        this.values = new double[columns.size()][];
+        for (int c = 0; c < values.length; c++) {
+            values[c] = newColumn();
+        }
+    }
+
+    public double[] newColumn() {
+        double[] column = new double[slotCount];
+        Arrays.fill(column, Double.NaN);
+        return column;
+    }
+
+    public void setColumn(int column, double[] data) {
+        values[column] = data;
+    }
+
+    public int getSlotCount() {
+        return slotCount;
+    }
+
+    public int getColumnCount() {
+        return columns.size();
+    }
+
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    public String getColumn(int column) {
+        return columns.get(column);
+    }
+
+    public long getSlotTime(int slot) {
+        return firstSlot + slot * SLOT_MILLIS;
+    }
+
+    public double getValue(int column, int slot) {
+        return values[column][slot];
+    }
+
+    public boolean hasValue(int column, int slot) {
+        return !Double.isNaN(values[column][slot]);
+    }
+
+    // Slot a sample timestamp falls into, or -1 when it is outside the grid.
+    public int slotIndex(long millis) {
+        long slot = Math.floorDiv(millis - firstSlot, SLOT_MILLIS);
+        return slot < 0 || slot >= slotCount ? -1 : (int) slot;
+    }
+
+    public boolean hasData() {
+        for (double[] column : values) {
+            for (double v : column) {
+                if (!Double.isNaN(v)) return true;
+            }
+        }
+        return false;
+    }
+
+    // Local-time flooring to the 10-minute slot, the Java side of BucketAggregation.BUCKET_EXPR.
+    public static long floorToSlot(long millis) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(millis);
+        cal.set(Calendar.MILLISECOND, 0);
+        cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MINUTE, (cal.get(Calendar.MINUTE) / 10) * 10);
+        return cal.getTimeInMillis();
+    }
+
+    // Rounded up so the first slot lies inside the requested range like the report_data BETWEEN query did.
+    private static long firstSlotAtOrAfter(long millis) {
+        long floor = floorToSlot(millis);
+        return floor < millis ? floor + SLOT_MILLIS : floor;
+    }
+}
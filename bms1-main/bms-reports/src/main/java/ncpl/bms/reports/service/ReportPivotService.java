@@ -0,0 +1,124 @@
+package ncpl.bms.reports.service;
+
+import lombok.extern.slf4j.Slf4j;
+import ncpl.bms.reports.db.info.SensorCatalogService;
+import ncpl.bms.reports.db.info.TableInfoService;
+import ncpl.bms.reports.model.dao.ReportTemplate;
+import ncpl.bms.reports.model.dto.ParameterDescriptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Builds report rows in memory straight from the EMS_NEW_ source tables, without going
+ * through the report_data scratch table.
+ */
+@Service
+@Slf4j
+public class ReportPivotService {
+
+    private static final int FETCH_SIZE = 2000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TableInfoService tableInfoService;
+
+    @Autowired
+    private ReportTemplateService templateService;
+
+    @Autowired
+    private ReportFetchExecutor fetchExecutor;
+
+    @Autowired
+    private SensorCatalogService sensorCatalogService;
+
+    @Autowired
+    private ReportRollupService rollupService;
+
+    public ReportPivot buildPivot(Long templateId, String fromDateMillis, String toDateMillis) {
+        long from = Long.parseLong(fromDateMillis);
+        long to = Long.parseLong(toDateMillis);
+
+        ReportTemplate template = templateService.getById(templateId);
+        List<String> columns = getColumns(template);
+        BucketAggregation aggregation = BucketAggregation.of(template.getAggregation());
+        ReportPivot pivot = new ReportPivot(from, to, columns);
+        log.info("Building pivot for template {}: {} columns x {} slots", templateId, columns.size(), pivot.getSlotCount());
+
+        // Sensors the catalog knows are empty in this range keep their all-NaN column without a query
+        Set<String> withData = sensorCatalogService.getTablesWithData(columns, new Timestamp(from), new Timestamp(to));
+
+        Map<String, Timestamp> watermarks = rollupService.getWatermarks();
+
+        // Each table fills its own array, so the result does not depend on which query finishes first
+        List<double[]> data = fetchExecutor.fetchAll(columns, table -> withData.contains(table)
+                ? readColumn(pivot, aggregation, table, new Timestamp(from), new Timestamp(to), watermarks.get(table))
+                : pivot.newColumn());
+        for (int c = 0; c < columns.size(); c++) {
+            pivot.setColumn(c, data.get(c));
+        }
+        return pivot;
+    }
+
+    // Source tables behind the template's parameters, in template order.
+    private List<String> getColumns(ReportTemplate template) {
+        Set<String> sourceTables = new HashSet<>(tableInfoService.getTables());
+        return template.getParameterDescriptors().stream()
+                .map(ParameterDescriptor::getColumn)
+                .distinct()
+                .filter(sourceTables::contains)
+                .collect(Collectors.toList());
+    }
+
+    // Complete buckets below the rollup watermark come from report_rollup_10min, the rest from the raw
+    // table. Either way the server reduces each bucket to one row with the template's aggregation.
+    private double[] readColumn(ReportPivot pivot, BucketAggregation aggregation, String table,
+                                Timestamp from, Timestamp to, Timestamp watermark) {
+        double[] column = pivot.newColumn();
+        try {
+            Timestamp rawFrom = from;
+            Timestamp rawStart = rollupService.getRawStart(watermark, to);
+            if (rawStart != null && rawStart.after(from)) {
+                stream(pivot, column, "SELECT bucket, " + aggregation.getRollupExpr() + " FROM report_rollup_10min " +
+                        "WHERE table_name = ? AND bucket >= ? AND bucket < ?", table, from, rawStart);
+                rawFrom = rawStart;
+            }
+            stream(pivot, column, aggregation.bucketSql(table), rawFrom, to);
+        } catch (Exception e) {
+            log.error("Error reading table {} into pivot: {}", table, e.getMessage());
+        }
+        return column;
+    }
+
+    // Reads (bucket, value) pairs through a forward-only cursor into the column.
+    private void stream(ReportPivot pivot, double[] column, String sql, Object... params) {
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(FETCH_SIZE);
+            for (int i = 0; i < params.length; i++) {
+                ps.setObject(i + 1, params[i]);
+            }
+            return ps;
+        }, rs -> {
+            Timestamp ts = rs.getTimestamp(1);
+            double value = rs.getDouble(2);
+            if (ts == null || rs.wasNull()) return;
+            int slot = pivot.slotIndex(ts.getTime());
+            if (slot >= 0) {
+                // report_data stored every sensor as INT, keep the same truncation
+                column[slot] = (long) value;
+            }
+        });
+    }
+}
@@ -0,0 +1,16 @@
+package ncpl.bms.reports.service;
+
+/**
+ * Receives the stage and overall percentage of one report generation, e.g. to keep a job row current.
+ */
+@FunctionalInterface
+public interface ReportProgressListener {
+
+    ReportProgressListener NONE = (stage, percent) -> { };
+
+    void update(String stage, int percent);
+
+    // Called inside the transaction that inserts the report row, so whatever it writes commits with the report
+    default void stored(Long reportId) {
+    }
+}
@@ -0,0 +1,41 @@
+package ncpl.bms.reports.service;
+
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Everything one PDF generation renders from: the data grid, per-column alarm ranges, header labels
+ * and the display range. Built once per call and handed down to the table and page-event code, so the
+ * report services keep no per-report state and can render several reports at the same time.
+ */
+@Getter
+public class ReportRenderContext {
+
+    private final Long templateId;
+    private final ReportPivot pivot;
+    // Source table -> {from, to}; values outside are highlighted
+    private final Map<String, double[]> parameterRanges;
+    // One label per data column, without the leading timestamp column
+    private final List<String> headers;
+    private final String fromDateTime;
+    private final String toDateTime;
+    private final String username;
+
+    public ReportRenderContext(Long templateId, ReportPivot pivot, Map<String, double[]> parameterRanges, List<String> headers,
+                               String fromDateTime, String toDateTime, String username) {
+        this.templateId = templateId;
+        this.pivot = pivot;
+        this.parameterRanges = Collections.unmodifiableMap(parameterRanges);
+        this.headers = Collections.unmodifiableList(headers);
+        this.fromDateTime = fromDateTime;
+        this.toDateTime = toDateTime;
+        this.username = username;
+    }
+
+    public int getColumnCount() {
+        return pivot.getColumnCount() + 1;
+    }
+}
@@ -0,0 +1,122 @@
+package ncpl.bms.reports.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Bounded pool for rendering chunks of one large PDF in parallel. Shared by all reports, sized to
+ * the number of cores unless report.render.parallelism says otherwise.
+ */
+@Component
+@Slf4j
+public class ReportRenderExecutor {
+
+    @Value("${report.render.parallelism:0}")
+    private int parallelism;
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        executor = Executors.newFixedThreadPool(threads, new CustomizableThreadFactory("report-render-"));
+        log.info("Report render executor started with {} threads", threads);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Runs the tasks on the pool and returns their results in task order. If one fails the others are
+     * cancelled and the failure is rethrown, but only once every task that had started has returned,
+     * so the caller can clean up whatever the tasks were writing.
+     */
+    public <T> List<T> invokeAll(List<Callable<T>> tasks) throws Exception {
+        List<TrackedTask<T>> tracked = new ArrayList<>();
+        List<Future<T>> futures = new ArrayList<>();
+        for (Callable<T> task : tasks) {
+            TrackedTask<T> trackedTask = new TrackedTask<>(task);
+            tracked.add(trackedTask);
+            futures.add(executor.submit(trackedTask));
+        }
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            cancelAndAwait(futures, tracked);
+            Thread.currentThread().interrupt();
+            throw e;
+        } catch (ExecutionException e) {
+            cancelAndAwait(futures, tracked);
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+        return results;
+    }
+
+    // Future.cancel does not wait for a running task, so wait on each task's own latch
+    private static <T> void cancelAndAwait(List<Future<T>> futures, List<TrackedTask<T>> tracked) {
+        tracked.forEach(TrackedTask::skip);
+        futures.forEach(f -> f.cancel(true));
+        boolean interrupted = false;
+        for (TrackedTask<T> task : tracked) {
+            while (true) {
+                try {
+                    task.finished.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // A task that either runs to the end or, once skipped before it started, never runs at all
+    private static final class TrackedTask<T> implements Callable<T> {
+        private final Callable<T> task;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private final CountDownLatch finished = new CountDownLatch(1);
+
+        private TrackedTask(Callable<T> task) {
+            this.task = task;
+        }
+
+        @Override
+        public T call() throws Exception {
+            if (!claimed.compareAndSet(false, true)) {
+                return null;
+            }
+            try {
+                return task.call();
+            } finally {
+                finished.countDown();
+            }
+        }
+
+        private void skip() {
+            if (claimed.compareAndSet(false, true)) {
+                finished.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package ncpl.bms.reports.service;
+
+import lombok.extern.slf4j.Slf4j;
+import ncpl.bms.reports.model.dto.ReportMetadataDTO;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * One metadata row per stored report of every {@link ReportKind}, in report_metadata. Services write
+ * their report rows through {@link #insert} and {@link #update}, which mirror the common fields in the
+ * same transaction as the write, so cross-kind questions such as "what is waiting for me to review" are a single seek
+ * on a filtered index instead of a scan of six tables. The PDF stays in the kind's table.
+ */
+@Repository
+@Slf4j
+// After ReportStorage and ReportListingService, which add the source columns copied here
+@Order(3)
+public class ReportRepository implements CommandLineRunner {
+
+    // Copied by the MERGE; reviewed_at and approved_at are converted from epoch millis text in Java, see syncTimes
+    static final List<String> COLUMNS = List.of("source_id", "template_id", "name", "from_date", "to_date",
+            "generated_by", "generated_at", "assigned_review", "reviewed_by", "is_approver_required",
+            "assigned_approver", "approved_by", "pdf_hash", "pdf_size");
+
+    private static final int MAX_LIMIT = 500;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * A string of epoch millis as the JVM-local timestamp the services write into datetime columns,
+     * or null when it is not a number.
+     */
+    static Timestamp fromEpochMillis(String millis) {
+        if (millis == null) {
+            return null;
+        }
+        try {
+            return new Timestamp(Long.parseLong(millis.trim()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void run(String... args) {
+        jdbcTemplate.execute("IF NOT EXISTS (SELECT * FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = 'report_metadata') BEGIN " +
+                "CREATE TABLE report_metadata (id BIGINT IDENTITY(1,1) PRIMARY KEY, kind VARCHAR(16) NOT NULL, source_id BIGINT NOT NULL, " +
+                "template_id BIGINT, name NVARCHAR(1000), from_date VARCHAR(50), to_date VARCHAR(50), generated_by VARCHAR(255), " +
+                "generated_at datetime2, assigned_review VARCHAR(255), reviewed_by VARCHAR(255), reviewed_at datetime2, " +
+                "is_approver_required BIT NOT NULL DEFAULT 0, assigned_approver VARCHAR(255), approved_by VARCHAR(255), " +
+                "approved_at datetime2, pdf_hash CHAR(64), pdf_size BIGINT, " +
+                "CONSTRAINT UQ_report_metadata_source UNIQUE (kind, source_id)); END;");
+        // Filtered to the open items, so each queue index only holds what is still waiting
+        createIndex("IX_report_metadata_review", "(assigned_review, generated_at DESC) INCLUDE (kind, source_id, name) " +
+                "WHERE reviewed_by IS NULL");
+        createIndex("IX_report_metadata_approval", "(assigned_approver, generated_at DESC) INCLUDE (kind, source_id, name) " +
+                "WHERE approved_by IS NULL AND is_approver_required = 1");
+        createIndex("IX_report_metadata_kind", "(kind, generated_at DESC, id DESC)");
+
+        // Picks up rows written before this table existed or changed behind the repository; rows already in step are not touched
+        for (ReportKind kind : ReportKind.values()) {
+            Integer exists = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = ?", Integer.class, kind.getTable());
+            if (exists != null && exists > 0) {
+                int merged = jdbcTemplate.update(mergeSql(kind.metadataSql()), kind.name(), kind.name());
+                int times = syncTimes(kind, "");
+                log.info("report_metadata reconciled with {}: {} rows, {} review/approval times", kind.getTable(), merged, times);
+            }
+        }
+    }
+
+    /** Runs an INSERT into the kind's table, mirrors the new row in the same transaction and returns its id. */
+    public Long insert(ReportKind kind, String sql, Object... args) {
+        return transactionTemplate.execute(status -> {
+            KeyHolder keyHolder = new GeneratedKeyHolder();
+            jdbcTemplate.update(connection -> {
+                PreparedStatement ps = connection.prepareStatement(sql, new String[]{"id"});
+                new ArgumentPreparedStatementSetter(args).setValues(ps);
+                return ps;
+            }, keyHolder);
+            Long id = keyHolder.getKey() != null ? keyHolder.getKey().longValue() : null;
+            if (id != null) {
+                sync(kind, id);
+            }
+            return id;
+        });
+    }
+
+    /** Runs an UPDATE of the report {@code id} in the kind's table and mirrors the result in the same transaction. */
+    public int update(ReportKind kind, long id, String sql, Object... args) {
+        Integer updated = transactionTemplate.execute(status -> {
+            int rows = jdbcTemplate.update(sql, args);
+            if (rows > 0) {
+                sync(kind, id);
+            }
+            return rows;
+        });
+        return updated != null ? updated : 0;
+    }
+
+    /** Reports assigned to {@code user} for review and not yet reviewed, newest first. */
+    public List<ReportMetadataDTO> findPendingReview(String user, int limit) {
+        return jdbcTemplate.query("SELECT TOP (" + clamp(limit) + ") * FROM report_metadata " +
+                "WHERE assigned_review = ? AND reviewed_by IS NULL ORDER BY generated_at DESC", MAPPER, user);
+    }
+
+    /** Reports that need {@code user}'s approval and are not yet approved, newest first. */
+    public List<ReportMetadataDTO> findPendingApproval(String user, int limit) {
+        return jdbcTemplate.query("SELECT TOP (" + clamp(limit) + ") * FROM report_metadata " +
+                "WHERE assigned_approver = ? AND approved_by IS NULL AND is_approver_required = 1 ORDER BY generated_at DESC",
+                MAPPER, user);
+    }
+
+    private static int clamp(int limit) {
+        return Math.max(1, Math.min(limit, MAX_LIMIT));
+    }
+
+    // Copies one report row into report_metadata; a failure rolls back the write it belongs to
+    private void sync(ReportKind kind, long id) {
+        jdbcTemplate.update(mergeSql(kind.metadataSql() + " WHERE id = ?"), id, kind.name(), kind.name());
+        syncTimes(kind, " WHERE id = ?", id);
+    }
+
+    // review_date and approved_date are epoch millis text. They are converted in Java, so reviewed_at and approved_at
+    // get the same JVM-local time as generated_at; only rows whose times differ are written. Returns that count.
+    private int syncTimes(ReportKind kind, String filter, Object... args) {
+        String source = kind.epochMillisSql();
+        if (source == null) {
+            return 0;
+        }
+        List<Object[]> changed = new ArrayList<>();
+        Object[] params = Arrays.copyOf(args, args.length + 1);
+        params[args.length] = kind.name();
+        jdbcTemplate.query("SELECT s.source_id, s.review_date, s.approved_date, m.reviewed_at, m.approved_at " +
+                "FROM (" + source + filter + ") s JOIN report_metadata m ON m.kind = ? AND m.source_id = s.source_id", rs -> {
+            Timestamp reviewedAt = fromEpochMillis(rs.getString("review_date"));
+            Timestamp approvedAt = fromEpochMillis(rs.getString("approved_date"));
+            if (!Objects.equals(reviewedAt, rs.getTimestamp("reviewed_at"))
+                    || !Objects.equals(approvedAt, rs.getTimestamp("approved_at"))) {
+                changed.add(new Object[]{reviewedAt, approvedAt, kind.name(), rs.getLong("source_id")});
+            }
+        }, params);
+        if (!changed.isEmpty()) {
+            jdbcTemplate.batchUpdate("UPDATE report_metadata SET reviewed_at = ?, approved_at = ? WHERE kind = ? AND source_id = ?",
+                    changed);
+        }
+        return changed.size();
+    }
+
+    // Takes the kind twice: once to match, once for the inserted row. Source rows select COLUMNS in order.
+    // EXCEPT compares NULLs as equal, so only rows that differ in some column are updated.
+    private static String mergeSql(String source) {
+        String updates = COLUMNS.stream().filter(c -> !c.equals("source_id"))
+                .map(c -> c + " = src." + c).collect(Collectors.joining(", "));
+        String values = COLUMNS.stream().map(c -> "src." + c).collect(Collectors.joining(", "));
+        return "MERGE report_metadata AS m USING (" + source + ") AS src " +
+                "ON m.kind = ? AND m.source_id = src.source_id " +
+                "WHEN MATCHED AND EXISTS (SELECT " + columns("src.") + " EXCEPT SELECT " + columns("m.") + ") " +
+                "THEN UPDATE SET " + updates + " " +
+                "WHEN NOT MATCHED THEN INSERT (" + Stream.concat(Stream.of("kind"), COLUMNS.stream()).collect(Collectors.joining(", ")) + ") " +
+                "VALUES (?, " + values + ");";
+    }
+
+    private static String columns(String prefix) {
+        return COLUMNS.stream().filter(c -> !c.equals("source_id")).map(c -> prefix + c).collect(Collectors.joining(", "));
+    }
+
+    private void createIndex(String index, String definition) {
+        jdbcTemplate.execute("IF NOT EXISTS (SELECT * FROM sys.indexes WHERE name = '" + index + "' AND object_id = OBJECT_ID('report_metadata')) " +
+                "CREATE INDEX " + index + " ON report_metadata " + definition);
+    }
+
+    private static final RowMapper<ReportMetadataDTO> MAPPER = (rs, rowNum) -> {
+        ReportMetadataDTO dto = new ReportMetadataDTO();
+        dto.setId(rs.getLong("id"));
+        dto.setKind(rs.getString("kind"));
+        dto.setSourceId(rs.getLong("source_id"));
+        dto.setTemplateId(rs.getObject("template_id", Long.class));
+        dto.setName(rs.getString("name"));
+        dto.setFromDate(rs.getString("from_date"));
+        dto.setToDate(rs.getString("to_date"));
+        dto.setGeneratedBy(rs.getString("generated_by"));
+        dto.setGeneratedAt(rs.getTimestamp("generated_at"));
+        dto.setAssignedReview(rs.getString("assigned_review"));
+        dto.setReviewedBy(rs.getString("reviewed_by"));
+        dto.setReviewedAt(rs.getTimestamp("reviewed_at"));
+        dto.setApproverRequired(rs.getBoolean("is_approver_required"));
+        dto.setAssignedApprover(rs.getString("assigned_approver"));
+        dto.setApprovedBy(rs.getString("approved_by"));
+        dto.setApprovedAt(rs.getTimestamp("approved_at"));
+        String hash = rs.getString("pdf_hash");
+        dto.setPdfHash(hash != null ? hash.trim() : null);
+        dto.setPdfSize(rs.getObject("pdf_size", Long.class));
+        return dto;
+    };
+}
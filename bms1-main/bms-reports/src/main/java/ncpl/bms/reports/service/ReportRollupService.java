@@ -0,0 +1,154 @@
+package ncpl.bms.reports.service;
+
+import lombok.extern.slf4j.Slf4j;
+import ncpl.bms.reports.db.info.TableInfoService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps report_rollup_10min up to date: first, last, min, max, sum and count of every source table per
+ * 10-minute bucket, so every {@link BucketAggregation} can be served and reports read one row per
+ * bucket for any covered range however long the raw history gets.
+ * <p>
+ * Each table has a high-water mark. A run only folds buckets that ended settle-ms ago and recomputes
+ * every bucket it touches from the raw samples, starting overlap-ms below the watermark. Samples that
+ * arrive late, or share a timestamp with the watermark, are picked up as long as they land within
+ * the overlap.
+ */
+@Service
+@Slf4j
+public class ReportRollupService implements CommandLineRunner {
+
+    private static final Timestamp EPOCH = Timestamp.valueOf("1900-01-01 00:00:00");
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TableInfoService tableInfoService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    // Upper bound on how much raw history one MERGE folds in, so the first backfill runs in slices
+    @Value("${report.rollup.batch-days:31}")
+    private int batchDays;
+
+    // Slices one run folds in per table; a long backfill continues on the next run instead of holding the scheduler
+    @Value("${report.rollup.max-batches-per-run:4}")
+    private int maxBatchesPerRun;
+
+    // Buckets are only folded once they ended this long ago, so samples still being written are not cut off
+    @Value("${report.rollup.settle-ms:600000}")
+    private long settleMs;
+
+    // How far below the watermark each run re-reads, to pick up samples that arrived after their bucket was folded
+    @Value("${report.rollup.overlap-ms:3600000}")
+    private long overlapMs;
+
+    @Override
+    public void run(String... args) {
+        jdbcTemplate.execute("IF NOT EXISTS (SELECT * FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = 'report_rollup_10min') BEGIN " +
+                "CREATE TABLE report_rollup_10min (table_name VARCHAR(128) NOT NULL, bucket datetime2 NOT NULL, " +
+                "first_value FLOAT, last_value FLOAT, min_value FLOAT, max_value FLOAT, sum_value FLOAT, sample_count BIGINT NOT NULL, " +
+                "PRIMARY KEY (table_name, bucket)); END;");
+        jdbcTemplate.execute("IF NOT EXISTS (SELECT * FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = 'report_rollup_watermark') BEGIN " +
+                "CREATE TABLE report_rollup_watermark (table_name VARCHAR(128) NOT NULL PRIMARY KEY, last_ts datetime2 NOT NULL, " +
+                "updated_at datetime2 NOT NULL); END;");
+    }
+
+    @Scheduled(initialDelayString = "${report.rollup.initial-delay-ms:90000}", fixedDelayString = "${report.rollup.refresh-ms:300000}")
+    public void ingest() {
+        Map<String, Timestamp> watermarks = getWatermarks();
+        Timestamp cutoff = new Timestamp(ReportPivot.floorToSlot(System.currentTimeMillis() - settleMs));
+        for (String table : tableInfoService.getTables()) {
+            try {
+                Timestamp watermark = watermarks.getOrDefault(table, EPOCH);
+                Timestamp next;
+                for (int batch = 0; batch < maxBatchesPerRun && (next = ingestBatch(table, watermark, cutoff)) != null; batch++) {
+                    watermark = next;
+                }
+            } catch (Exception e) {
+                log.error("Rollup ingest failed for {}: {}", table, e.getMessage());
+            }
+        }
+    }
+
+    // Recomputes one slice of whole buckets from overlap-ms below the watermark up to the (bucket-aligned)
+    // cutoff; returns the new watermark, or null once the table is caught up.
+    private Timestamp ingestBatch(String table, Timestamp watermark, Timestamp cutoff) {
+        Timestamp from = new Timestamp(ReportPivot.floorToSlot(watermark.getTime() - overlapMs));
+        Timestamp first = jdbcTemplate.queryForObject(
+                "SELECT MIN(timestamp) FROM " + table + " WHERE timestamp >= ? AND timestamp < ?", Timestamp.class, from, cutoff);
+        if (first == null) {
+            return null;
+        }
+        // Both ends are bucket boundaries, so every bucket in the slice is read in full
+        Timestamp sliceFrom = new Timestamp(ReportPivot.floorToSlot(first.getTime()));
+        Timestamp sliceTo = new Timestamp(Math.min(sliceFrom.getTime() + TimeUnit.DAYS.toMillis(batchDays), cutoff.getTime()));
+        Timestamp upper = jdbcTemplate.queryForObject(
+                "SELECT MAX(timestamp) FROM " + table + " WHERE timestamp >= ? AND timestamp < ?",
+                Timestamp.class, sliceFrom, sliceTo);
+
+        String mergeSql = "MERGE report_rollup_10min AS r USING (" +
+                "SELECT bucket, COUNT(*) AS cnt, MIN(value) AS min_v, MAX(value) AS max_v, SUM(value) AS sum_v, " +
+                "MAX(CASE WHEN rn = 1 THEN value END) AS last_v, MAX(CASE WHEN rn_first = 1 THEN value END) AS first_v FROM (" +
+                "SELECT " + BucketAggregation.BUCKET_EXPR + " AS bucket, value, " +
+                "ROW_NUMBER() OVER (PARTITION BY " + BucketAggregation.BUCKET_EXPR + " ORDER BY timestamp DESC) AS rn, " +
+                "ROW_NUMBER() OVER (PARTITION BY " + BucketAggregation.BUCKET_EXPR + " ORDER BY timestamp) AS rn_first " +
+                "FROM " + table + " WHERE timestamp >= ? AND timestamp < ? AND value IS NOT NULL) x GROUP BY bucket) AS s " +
+                "ON r.table_name = ? AND r.bucket = s.bucket " +
+                "WHEN MATCHED THEN UPDATE SET first_value = s.first_v, last_value = s.last_v, min_value = s.min_v, " +
+                "max_value = s.max_v, sum_value = s.sum_v, sample_count = s.cnt " +
+                "WHEN NOT MATCHED THEN INSERT (table_name, bucket, first_value, last_value, min_value, max_value, sum_value, sample_count) " +
+                "VALUES (?, s.bucket, s.first_v, s.last_v, s.min_v, s.max_v, s.sum_v, s.cnt);";
+        String watermarkSql = "MERGE report_rollup_watermark AS w USING (SELECT ? AS table_name) AS s " +
+                "ON w.table_name = s.table_name " +
+                "WHEN MATCHED THEN UPDATE SET last_ts = ?, updated_at = SYSDATETIME() " +
+                "WHEN NOT MATCHED THEN INSERT (table_name, last_ts, updated_at) VALUES (s.table_name, ?, SYSDATETIME());";
+        Timestamp next = upper.after(watermark) ? upper : watermark;
+        // One transaction, so a slice is never folded in without its watermark moving past it
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update(mergeSql, sliceFrom, sliceTo, table, table);
+            jdbcTemplate.update(watermarkSql, table, next, next);
+        });
+        log.debug("Rollup for {} recomputed from {} to {}", table, sliceFrom, sliceTo);
+        // Only the re-read overlap was left, so the table is caught up
+        return next.after(watermark) ? next : null;
+    }
+
+    public Map<String, Timestamp> getWatermarks() {
+        Map<String, Timestamp> watermarks = new HashMap<>();
+        try {
+            jdbcTemplate.query("SELECT table_name, last_ts FROM report_rollup_watermark",
+                    rs -> {
+                        watermarks.put(rs.getString("table_name"), rs.getTimestamp("last_ts"));
+                    });
+        } catch (Exception e) {
+            log.warn("Rollup watermarks unavailable: {}", e.getMessage());
+        }
+        return watermarks;
+    }
+
+    /**
+     * Start of the first bucket that still has to be read from the raw table for a range ending at
+     * {@code to}. Buckets before it are complete in the rollup; null means nothing is covered.
+     */
+    public Timestamp getRawStart(Timestamp watermark, Timestamp to) {
+        if (watermark == null) {
+            return null;
+        }
+        long coveredUntil = Math.min(watermark.getTime(), to.getTime());
+        return new Timestamp(ReportPivot.floorToSlot(coveredUntil));
+    }
+}
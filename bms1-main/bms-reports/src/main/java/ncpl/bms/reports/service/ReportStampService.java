@@ -0,0 +1,298 @@
+package ncpl.bms.reports.service;
+
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.Element;
+import com.lowagie.text.Font;
+import com.lowagie.text.FontFactory;
+import com.lowagie.text.Paragraph;
+import com.lowagie.text.Phrase;
+import com.lowagie.text.Rectangle;
+import com.lowagie.text.pdf.ColumnText;
+import com.lowagie.text.pdf.PdfContentByte;
+import com.lowagie.text.pdf.PdfPCell;
+import com.lowagie.text.pdf.PdfPTable;
+import com.lowagie.text.pdf.PdfReader;
+import com.lowagie.text.pdf.PdfStamper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Review and approval stamps. Signing off only records a row in report_stamps; the stored PDF is not
+ * touched. The first download after a sign-off builds the stamped rendition: the stamps not yet in it
+ * are appended to the previous rendition (or the original PDF) as a PdfStamper incremental update,
+ * and the result is kept in report_renditions, which is served from then on. Builds go through temp
+ * files and are serialized per report; the stored file a rebuild replaces is deleted once no row uses it.
+ */
+@Service
+@Slf4j
+@Order(4)
+public class ReportStampService implements CommandLineRunner {
+
+    public static final String RENDITIONS = "report_renditions";
+
+    public static final String REVIEW = "REVIEW";
+    public static final String APPROVE = "APPROVE";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ReportStorage reportStorage;
+
+    @Autowired
+    private ReportPdfResources pdfResources;
+
+    // One lock per report being built, dropped when its last user is done; guarded by itself
+    private final Map<String, BuildLock> buildLocks = new HashMap<>();
+
+    private static final class BuildLock {
+        private int users;
+    }
+
+    private static final class Stamp {
+        private final long id;
+        private final String type;
+        private final String username;
+        private final LocalDateTime stampedAt;
+
+        private Stamp(long id, String type, String username, LocalDateTime stampedAt) {
+            this.id = id;
+            this.type = type;
+            this.username = username;
+            this.stampedAt = stampedAt;
+        }
+    }
+
+    @Override
+    public void run(String... args) {
+        jdbcTemplate.execute("IF NOT EXISTS (SELECT * FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = 'report_stamps') BEGIN " +
+                "CREATE TABLE report_stamps (id BIGINT IDENTITY(1,1) PRIMARY KEY, kind VARCHAR(16) NOT NULL, source_id BIGINT NOT NULL, " +
+                "stamp_type VARCHAR(16) NOT NULL, username VARCHAR(255), stamped_at datetime2 NOT NULL); " +
+                "CREATE INDEX IX_report_stamps_source ON report_stamps (kind, source_id, id); END;");
+        jdbcTemplate.execute("IF NOT EXISTS (SELECT * FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = '" + RENDITIONS + "') BEGIN " +
+                "CREATE TABLE " + RENDITIONS + " (id BIGINT IDENTITY(1,1) PRIMARY KEY, kind VARCHAR(16) NOT NULL, source_id BIGINT NOT NULL, " +
+                "last_stamp_id BIGINT NOT NULL, pdf_data VARBINARY(MAX), pdf_hash CHAR(64), pdf_size BIGINT, " +
+                "pdf_version INT NOT NULL DEFAULT 0, CONSTRAINT UQ_report_renditions_source UNIQUE (kind, source_id)); END;");
+    }
+
+    /** Records a sign-off; it shows up in the PDF from the next download on. */
+    public void addStamp(ReportKind kind, long sourceId, String type, String username, long stampedAtMillis) {
+        jdbcTemplate.update("INSERT INTO report_stamps (kind, source_id, stamp_type, username, stamped_at) VALUES (?, ?, ?, ?, ?)",
+                kind.name(), sourceId, type, username, new Timestamp(stampedAtMillis));
+    }
+
+    /**
+     * Id of the report_renditions row to serve instead of the stored PDF, built or brought up to date
+     * first if needed. Null when the report has no stamps, or no PDF to stamp.
+     */
+    public Long getRendition(String table, Object id) {
+        ReportKind kind = ReportKind.ofTable(table);
+        long sourceId = ((Number) id).longValue();
+        Long lastStamp = lastStampId(kind, sourceId);
+        if (lastStamp == null) {
+            return null;
+        }
+        List<long[]> rendition = findRendition(kind, sourceId);
+        if (!rendition.isEmpty() && rendition.get(0)[1] == lastStamp) {
+            return rendition.get(0)[0];
+        }
+        ReportStorage.PdfInfo info = reportStorage.getInfo(table, sourceId);
+        if (info == null || info.getSize() == 0) {
+            return null;
+        }
+        try {
+            return build(kind, sourceId);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (DocumentException e) {
+            throw new IllegalStateException("Could not stamp " + table + " " + id, e);
+        }
+    }
+
+    // Two downloads of the same report must not both build it; different reports build in parallel
+    private long build(ReportKind kind, long sourceId) throws IOException, DocumentException {
+        String key = kind + ":" + sourceId;
+        BuildLock lock;
+        synchronized (buildLocks) {
+            lock = buildLocks.computeIfAbsent(key, k -> new BuildLock());
+            lock.users++;
+        }
+        try {
+            synchronized (lock) {
+                return buildLocked(kind, sourceId);
+            }
+        } finally {
+            synchronized (buildLocks) {
+                if (--lock.users == 0) {
+                    buildLocks.remove(key);
+                }
+            }
+        }
+    }
+
+    private long buildLocked(ReportKind kind, long sourceId) throws IOException, DocumentException {
+        long start = System.currentTimeMillis();
+        // Another download may have built it while this one waited
+        List<long[]> rendition = findRendition(kind, sourceId);
+        long appliedUpTo = rendition.isEmpty() ? 0 : rendition.get(0)[1];
+        List<Stamp> stamps = jdbcTemplate.query("SELECT id, stamp_type, username, stamped_at FROM report_stamps " +
+                        "WHERE kind = ? AND source_id = ? AND id > ? ORDER BY id",
+                (rs, rowNum) -> new Stamp(rs.getLong("id"), rs.getString("stamp_type"), rs.getString("username"),
+                        rs.getTimestamp("stamped_at").toLocalDateTime()),
+                kind.name(), sourceId, appliedUpTo);
+        if (stamps.isEmpty()) {
+            return rendition.get(0)[0];
+        }
+
+        Path base = Files.createTempFile("report-stamp-", ".pdf");
+        Path stamped = Files.createTempFile("report-stamp-", ".pdf");
+        try {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(base))) {
+                if (rendition.isEmpty()) {
+                    reportStorage.writeTo(kind.getTable(), sourceId, out);
+                } else {
+                    reportStorage.writeTo(RENDITIONS, rendition.get(0)[0], out);
+                }
+            }
+            PdfReader reader = new PdfReader(base.toString());
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(stamped))) {
+                // Append mode keeps the existing bytes and adds the stamps as an incremental update
+                PdfStamper stamper = new PdfStamper(reader, out, '\0', true);
+                for (Stamp stamp : stamps) {
+                    paint(kind, stamp, stamper, reader);
+                }
+                stamper.close();
+            } finally {
+                reader.close();
+            }
+
+            long lastStamp = stamps.get(stamps.size() - 1).id;
+            ReportStorage.StoredPdf pdf = reportStorage.store(stamped);
+            long renditionId;
+            if (rendition.isEmpty()) {
+                jdbcTemplate.update("INSERT INTO " + RENDITIONS + " (kind, source_id, last_stamp_id, pdf_data, pdf_hash, pdf_size) VALUES (?, ?, ?, ?, ?, ?)",
+                        kind.name(), sourceId, lastStamp, pdf.getBlob(), pdf.getHash(), pdf.getSize());
+                renditionId = findRendition(kind, sourceId).get(0)[0];
+            } else {
+                renditionId = rendition.get(0)[0];
+                ReportStorage.PdfInfo previous = reportStorage.getInfo(RENDITIONS, renditionId);
+                jdbcTemplate.update("UPDATE " + RENDITIONS + " SET pdf_data = ?, pdf_hash = ?, pdf_size = ?, pdf_version = pdf_version + 1, " +
+                        "last_stamp_id = ? WHERE id = ?", pdf.getBlob(), pdf.getHash(), pdf.getSize(), lastStamp, renditionId);
+                if (previous != null && previous.getHash() != null) {
+                    reportStorage.deleteIfUnused(previous.getHash());
+                }
+            }
+            log.info("Stamped {} sign-off(s) into {} {} in {} ms", stamps.size(), kind, sourceId, System.currentTimeMillis() - start);
+            return renditionId;
+        } finally {
+            Files.deleteIfExists(base);
+            Files.deleteIfExists(stamped);
+        }
+    }
+
+    private Long lastStampId(ReportKind kind, long sourceId) {
+        return jdbcTemplate.queryForObject("SELECT MAX(id) FROM report_stamps WHERE kind = ? AND source_id = ?",
+                Long.class, kind.name(), sourceId);
+    }
+
+    // {id, last_stamp_id} of the rendition, or empty
+    private List<long[]> findRendition(ReportKind kind, long sourceId) {
+        return jdbcTemplate.query("SELECT id, last_stamp_id FROM " + RENDITIONS + " WHERE kind = ? AND source_id = ?",
+                (rs, rowNum) -> new long[]{rs.getLong("id"), rs.getLong("last_stamp_id")}, kind.name(), sourceId);
+    }
+
+    // Each kind keeps the look its stamps had when they were written into the stored PDF.
+    private void paint(ReportKind kind, Stamp stamp, PdfStamper stamper, PdfReader reader) {
+        switch (kind) {
+            case MANUAL:
+                paintManual(stamp, stamper, reader);
+                break;
+            case DAILY:
+            case WEEKLY:
+            case MONTHLY:
+                paintScheduled(stamp, stamper, reader);
+                break;
+            case ALARM:
+                paintAlarm(stamp, stamper, reader);
+                break;
+            default:
+                log.warn("No stamp layout for {} reports, {} stamp {} skipped", kind, stamp.type, stamp.id);
+        }
+    }
+
+    // Review on the left, approval on the right, on every page
+    private void paintManual(Stamp stamp, PdfStamper stamper, PdfReader reader) {
+        String formattedDate = stamp.stampedAt.format(DateTimeFormatter.ofPattern("d-MMMM-yyyy HH:mm:ss"));
+        boolean review = REVIEW.equals(stamp.type);
+        Font font = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 10);
+        PdfPTable table = new PdfPTable(1);
+        table.setTotalWidth(180);
+        table.setWidthPercentage(100);
+
+        PdfPCell cell = new PdfPCell(new Phrase("\n" + (review ? "Reviewed" : "Approved") + " By:Supervisor: " + stamp.username +
+                "\nDate: " + formattedDate, font));
+        cell.setBorder(Rectangle.NO_BORDER);
+        cell.setPadding(10);
+        cell.setHorizontalAlignment(review ? Element.ALIGN_LEFT : Element.ALIGN_RIGHT);
+        table.addCell(cell);
+
+        for (int i = 1; i <= reader.getNumberOfPages(); i++) {
+            PdfContentByte canvas = stamper.getOverContent(i);
+            Rectangle pageSize = reader.getPageSize(i);
+            float x = review ? pageSize.getRight() - 260 : pageSize.getRight() - table.getTotalWidth() + 210;
+            float y = pageSize.getBottom() + 73;
+            table.writeSelectedRows(0, -1, x, y, canvas);
+        }
+    }
+
+    // Scheduled reports are only stamped on approval, at the bottom of the last page
+    private void paintScheduled(Stamp stamp, PdfStamper stamper, PdfReader reader) {
+        int lastPage = reader.getNumberOfPages();
+        PdfContentByte content = stamper.getOverContent(lastPage);
+
+        PdfPTable footerTable = new PdfPTable(1);
+        footerTable.setWidthPercentage(100);
+        Font fontTitle = FontFactory.getFont(FontFactory.HELVETICA_BOLD);
+        fontTitle.setSize(13);
+        String formattedDate = stamp.stampedAt.format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
+
+        PdfPCell reviewCell = new PdfPCell(new Paragraph("Reviewed By:\nSupervisor: " + stamp.username + "\nDate: " + formattedDate, fontTitle));
+        reviewCell.setBorder(Rectangle.NO_BORDER);
+        reviewCell.setHorizontalAlignment(Element.ALIGN_RIGHT);
+        footerTable.addCell(reviewCell);
+
+        Rectangle pageSize = reader.getPageSize(lastPage);
+        footerTable.setTotalWidth(pageSize.getRight() - pageSize.getLeft());
+        footerTable.writeSelectedRows(0, -1, pageSize.getLeft(), pageSize.getBottom() + 50, content);
+    }
+
+    private void paintAlarm(Stamp stamp, PdfStamper stamper, PdfReader reader) {
+        String formattedDate = stamp.stampedAt.format(DateTimeFormatter.ofPattern("dd-MMM-yyyy HH:mm:ss"));
+        Font font = new Font(pdfResources.getHelvetica(), 9);
+        for (int i = 1; i <= reader.getNumberOfPages(); i++) {
+            PdfContentByte canvas = stamper.getOverContent(i);
+            Rectangle pageSize = reader.getPageSize(i);
+            float x = pageSize.getRight() + 200f;
+            float y = pageSize.getBottom() + 40f;
+            ColumnText.showTextAligned(canvas, Element.ALIGN_RIGHT, new Phrase("Reviewed By: " + stamp.username, font), x, y, 0);
+            ColumnText.showTextAligned(canvas, Element.ALIGN_RIGHT, new Phrase("Generated on: " + formattedDate, font), x, y - 12f, 0);
+        }
+    }
+}
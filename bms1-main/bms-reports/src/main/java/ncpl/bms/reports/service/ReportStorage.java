@@ -0,0 +1,288 @@
+package ncpl.bms.reports.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.support.SqlBinaryValue;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Where generated PDFs live. With {@code report.storage.backend=blob} they stay in the table's
+ * VARBINARY column as before; with {@code file} they go to the {@link ReportFileStore} and the row only
+ * keeps {@code pdf_hash} and {@code pdf_size}. Reads handle both, so rows written under either backend,
+ * or not yet migrated, keep working. Every statement that rewrites a stored PDF (a rebuilt stamped
+ * rendition) also increments {@code pdf_version}, which identifies blob content for ETags.
+ */
+@Component
+@Slf4j
+@Order(1)
+public class ReportStorage implements CommandLineRunner {
+
+    public static final String FILE = "file";
+
+    // Report tables and the column that holds the PDF blob
+    public static final Map<String, String> TABLES = new LinkedHashMap<>();
+
+    static {
+        TABLES.put("stored_reports", "pdf_data");
+        TABLES.put("stored_reports_daily", "pdf_data");
+        TABLES.put("stored_reports_weekly", "pdf_data");
+        TABLES.put("stored_reports_monthly", "pdf_data");
+        TABLES.put("StoredAlarmReport", "report_data");
+        TABLES.put("StoredAuditReport", "report_data");
+        TABLES.put(ReportStampService.RENDITIONS, "pdf_data");
+    }
+
+    // Kept in the blob column of file-backed rows, in case it was created NOT NULL
+    private static final byte[] EMPTY = new byte[0];
+
+    @Value("${report.storage.backend:blob}")
+    private String backend;
+
+    @Autowired
+    private ReportFileStore fileStore;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ReportRepository reportRepository;
+
+    /** Values for the blob, {@code pdf_hash} and {@code pdf_size} columns of an INSERT or UPDATE. */
+    public static final class StoredPdf {
+        private final SqlBinaryValue blob;
+        private final String hash;
+        private final long size;
+
+        private StoredPdf(SqlBinaryValue blob, String hash, long size) {
+            this.blob = blob;
+            this.hash = hash;
+            this.size = size;
+        }
+
+        public SqlBinaryValue getBlob() {
+            return blob;
+        }
+
+        public String getHash() {
+            return hash;
+        }
+
+        public long getSize() {
+            return size;
+        }
+    }
+
+    /** What is known about a stored PDF without reading it. */
+    public static final class PdfInfo {
+        private final String hash;
+        private final long size;
+        private final int version;
+
+        private PdfInfo(String hash, long size, int version) {
+            this.hash = hash;
+            this.size = size;
+            this.version = version;
+        }
+
+        // Null for PDFs kept in the blob column
+        public String getHash() {
+            return hash;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public int getVersion() {
+            return version;
+        }
+    }
+
+    @Override
+    public void run(String... args) {
+        // The report tables predate this class; add the columns to the ones that exist
+        for (String table : TABLES.keySet()) {
+            jdbcTemplate.execute("IF EXISTS (SELECT * FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = '" + table + "') " +
+                    "AND NOT EXISTS (SELECT * FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_NAME = '" + table + "' AND COLUMN_NAME = 'pdf_hash') " +
+                    "ALTER TABLE " + table + " ADD pdf_hash CHAR(64) NULL, pdf_size BIGINT NULL");
+            jdbcTemplate.execute("IF EXISTS (SELECT * FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = '" + table + "') " +
+                    "AND NOT EXISTS (SELECT * FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_NAME = '" + table + "' AND COLUMN_NAME = 'pdf_version') " +
+                    "ALTER TABLE " + table + " ADD pdf_version INT NOT NULL DEFAULT 0");
+        }
+        log.info("Report storage backend: {}", backend);
+    }
+
+    public StoredPdf store(byte[] pdf) throws IOException {
+        if (!FILE.equals(backend)) {
+            return new StoredPdf(new SqlBinaryValue(pdf), null, pdf.length);
+        }
+        String hash = fileStore.put(new ByteArrayInputStream(pdf));
+        return new StoredPdf(new SqlBinaryValue(EMPTY), hash, pdf.length);
+    }
+
+    // The blob backend streams the file into the statement; it has to exist until the statement ran.
+    public StoredPdf store(Path pdf) throws IOException {
+        long size = Files.size(pdf);
+        if (!FILE.equals(backend)) {
+            return new StoredPdf(new SqlBinaryValue(new FileSystemResource(pdf), size), null, size);
+        }
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(pdf))) {
+            return new StoredPdf(new SqlBinaryValue(EMPTY), fileStore.put(in), size);
+        }
+    }
+
+    /** The PDF of the current row; the query must select {@code pdf_hash} along with the blob column. */
+    public byte[] read(ResultSet rs, String blobColumn) throws SQLException {
+        String hash = rs.getString("pdf_hash");
+        if (hash == null) {
+            return rs.getBytes(blobColumn);
+        }
+        try {
+            return fileStore.read(hash.trim());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Hash, size and version of a row's PDF; the blob itself is not read. Null when the row does not exist. */
+    public PdfInfo getInfo(String table, Object id) {
+        String blobColumn = TABLES.get(table);
+        List<PdfInfo> infos = jdbcTemplate.query("SELECT pdf_hash, COALESCE(pdf_size, DATALENGTH(" + blobColumn + "), 0) AS size, pdf_version " +
+                        "FROM " + table + " WHERE id = ?",
+                (rs, rowNum) -> {
+                    String hash = rs.getString("pdf_hash");
+                    return new PdfInfo(hash != null ? hash.trim() : null, rs.getLong("size"), rs.getInt("pdf_version"));
+                }, id);
+        return infos.isEmpty() ? null : infos.get(0);
+    }
+
+    /**
+     * Deletes a stored file that no report row refers to any more, e.g. the rendition a rebuild
+     * replaced. A file still open for a download (Windows) is left in place and logged.
+     */
+    public void deleteIfUnused(String hash) {
+        for (String table : TABLES.keySet()) {
+            Integer exists = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = ?", Integer.class, table);
+            if (exists == null || exists == 0) {
+                continue;
+            }
+            Integer refs = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table + " WHERE pdf_hash = ?", Integer.class, hash);
+            if (refs != null && refs > 0) {
+                return;
+            }
+        }
+        try {
+            fileStore.delete(hash);
+        } catch (IOException e) {
+            log.warn("Could not delete unused report file {}: {}", hash, e.getMessage());
+        }
+    }
+
+    /** Copies the PDF of a row to {@code out}: FileChannel.transferTo for stored files, else the blob stream. */
+    public void writeTo(String table, Object id, OutputStream out) {
+        String blobColumn = TABLES.get(table);
+        jdbcTemplate.query("SELECT pdf_hash, " + blobColumn + " FROM " + table + " WHERE id = ?", rs -> {
+            String hash = rs.getString("pdf_hash");
+            try {
+                if (hash != null) {
+                    fileStore.transferTo(hash.trim(), out);
+                    return;
+                }
+                try (InputStream in = rs.getBinaryStream(blobColumn)) {
+                    if (in != null) in.transferTo(out);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, id);
+    }
+
+    // Copies {@code length} bytes from {@code offset}; blobs are cut with SUBSTRING so only the range leaves the database.
+    public void writeTo(String table, Object id, long offset, long length, OutputStream out) {
+        String blobColumn = TABLES.get(table);
+        jdbcTemplate.query("SELECT pdf_hash, SUBSTRING(" + blobColumn + ", ?, ?) AS part FROM " + table + " WHERE id = ?", rs -> {
+            String hash = rs.getString("pdf_hash");
+            try {
+                if (hash != null) {
+                    fileStore.transferTo(hash.trim(), offset, length, out);
+                    return;
+                }
+                try (InputStream in = rs.getBinaryStream("part")) {
+                    if (in != null) in.transferTo(out);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, offset + 1, length, id);
+    }
+
+    /**
+     * Moves the blobs of all report tables into the file store, {@code batchSize} rows per round, and
+     * returns how many rows of each table were moved. Rows are handled one at a time, so the migration
+     * can be interrupted and run again.
+     */
+    public Map<String, Integer> migrateBlobsToFiles(int batchSize) throws IOException {
+        Map<String, Integer> moved = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : TABLES.entrySet()) {
+            String table = entry.getKey();
+            String blobColumn = entry.getValue();
+            Integer exists = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = ?", Integer.class, table);
+            if (exists == null || exists == 0) {
+                continue;
+            }
+            int count = 0;
+            List<Long> ids;
+            do {
+                ids = jdbcTemplate.queryForList("SELECT TOP (" + batchSize + ") id FROM " + table +
+                        " WHERE pdf_hash IS NULL AND DATALENGTH(" + blobColumn + ") > 0 ORDER BY id", Long.class);
+                for (Long id : ids) {
+                    migrateRow(table, blobColumn, id);
+                    count++;
+                }
+            } while (ids.size() == batchSize);
+            log.info("Moved {} PDFs of {} to the file store", count, table);
+            moved.put(table, count);
+        }
+        return moved;
+    }
+
+    private void migrateRow(String table, String blobColumn, Long id) throws IOException {
+        String[] hash = new String[1];
+        jdbcTemplate.query("SELECT " + blobColumn + " FROM " + table + " WHERE id = ?", rs -> {
+            try (InputStream in = rs.getBinaryStream(blobColumn)) {
+                hash[0] = fileStore.put(in);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, id);
+        long size = Files.size(fileStore.resolve(hash[0]));
+        // Skips the row if a concurrent run already moved it
+        String sql = "UPDATE " + table + " SET pdf_hash = ?, pdf_size = ?, " + blobColumn + " = ? WHERE id = ? AND pdf_hash IS NULL";
+        if (ReportStampService.RENDITIONS.equals(table)) {
+            jdbcTemplate.update(sql, hash[0], size, EMPTY, id);
+        } else {
+            reportRepository.update(ReportKind.ofTable(table), id, sql, hash[0], size, EMPTY, id);
+        }
+    }
+}
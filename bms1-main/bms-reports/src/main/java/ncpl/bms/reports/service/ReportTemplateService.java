@@ -16,9 +16,17 @@ public class ReportTemplateService {
     @Autowired
     private ReportTemplateRepository reportTemplateRepo;
 
+    @Autowired
+    private ReportMetadataCache metadataCache;
+
 
     public ReportTemplate saveTemplate(ReportTemplate reportTemplate) {
-        return reportTemplateRepo.save(reportTemplate);
+        String aggregation = reportTemplate.getAggregation();
+        BucketAggregation.of(aggregation);
+        reportTemplate.setAggregation(aggregation == null || aggregation.isBlank() ? null : aggregation.trim());
+        ReportTemplate saved = reportTemplateRepo.save(reportTemplate);
+        metadataCache.invalidateTemplate(saved.getId());
+        return saved;
     }
 
     public List<ReportTemplate> getTemplates(){
@@ -27,8 +35,7 @@ public class ReportTemplateService {
 
     public ReportTemplate getById(Long id) {
 //        log.info("Get template with id {} ", id);
-        return reportTemplateRepo.findById(id)
-                .orElseThrow(() -> new RuntimeException("Template not found with id " + id));
+        return metadataCache.getTemplate(id);
     }
 
     public List<ReportTemplate> getTemplatesByName(String name) {
@@ -37,6 +44,7 @@ public class ReportTemplateService {
 
     public void deleteTemplatesByIds(List<Long> ids) {
         reportTemplateRepo.deleteAllById(ids);
+        ids.forEach(metadataCache::invalidateTemplate);
     }
 
     public ReportTemplate updateTemplate(Long id, ReportTemplate updatedTemplate) {
@@ -51,8 +59,16 @@ public class ReportTemplateService {
             // ✅ Add these lines
             template.setRoomId(updatedTemplate.getRoomId());
             template.setRoomName(updatedTemplate.getRoomName());
+            // Left out keeps the current aggregation, an empty string resets it to the default
+            String aggregation = updatedTemplate.getAggregation();
+            if (aggregation != null) {
+                BucketAggregation.of(aggregation);
+                template.setAggregation(aggregation.isBlank() ? null : aggregation.trim());
+            }
 
-            return reportTemplateRepo.save(template);
+            ReportTemplate saved = reportTemplateRepo.save(template);
+            metadataCache.invalidateTemplate(id);
+            return saved;
         } else {
             throw new RuntimeException("Template not found with id " + id);
         }
@@ -0,0 +1,93 @@
+package ncpl.bms.reports.service;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Running max/min/avg of one report column over slot values. Ties keep the earliest timestamp,
+ * so partial results (one per rendered chunk) can be folded in any order.
+ */
+public class StatisticsAccumulator {
+
+    private double max = Double.NEGATIVE_INFINITY;
+    private double min = Double.POSITIVE_INFINITY;
+    private long maxTime;
+    private long minTime;
+    private double sum;
+    private long count;
+
+    public void accept(double value, long time) {
+        fold(value, time, value, time, value, 1);
+    }
+
+    // Folds in the result of another accumulator, e.g. one per rendered chunk.
+    public void merge(StatisticsAccumulator other) {
+        fold(other.min, other.minTime, other.max, other.maxTime, other.sum, other.count);
+    }
+
+    private void fold(double minValue, long minAt, double maxValue, long maxAt, double total, long samples) {
+        if (samples <= 0) return;
+        if (maxValue > max || (maxValue == max && maxAt < maxTime)) {
+            max = maxValue;
+            maxTime = maxAt;
+        }
+        if (minValue < min || (minValue == min && minAt < minTime)) {
+            min = minValue;
+            minTime = minAt;
+        }
+        sum += total;
+        count += samples;
+    }
+
+    public boolean hasData() {
+        return count > 0;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public long getMaxTime() {
+        return maxTime;
+    }
+
+    public long getMinTime() {
+        return minTime;
+    }
+
+    public double getAverage() {
+        return count > 0 ? sum / count : Double.NaN;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    // Same shape PdfService has always handed to the statistics table: max/min with timestamp, avg.
+    public Map<String, Map<String, Object>> toMap() {
+        Map<String, Map<String, Object>> statMap = new LinkedHashMap<>();
+        Map<String, Object> maxMap = new HashMap<>();
+        Map<String, Object> minMap = new HashMap<>();
+        Map<String, Object> avgMap = new HashMap<>();
+
+        if (hasData()) {
+            maxMap.put("value", (int) max);
+            maxMap.put("timestamp", maxTime);
+
+            minMap.put("value", (int) min);
+            minMap.put("timestamp", minTime);
+
+            avgMap.put("value", (int) (sum / count));
+        }
+
+        statMap.put("max", maxMap);
+        statMap.put("min", minMap);
+        statMap.put("avg", avgMap);
+        return statMap;
+    }
+}
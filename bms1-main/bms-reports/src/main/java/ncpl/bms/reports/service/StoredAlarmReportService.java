@@ -19,7 +19,7 @@ public class StoredAlarmReportService {
     // Fetch all stored alarm reports
     public List<StoredAlarmReportDTO> getAllStoredAlarmReports() {
         String sql = "SELECT id, report_name, generated_on, reviewed_by, review_date, generated_by " +
-                "FROM StoredAlarmReport ORDER BY generated_on DESC";
+                "FROM StoredAlarmReport ORDER BY generated_on DESC, id DESC";
 
         return jdbcTemplate.query(sql, (ResultSet rs, int rowNum) -> {
             StoredAlarmReportDTO dto = new StoredAlarmReportDTO();
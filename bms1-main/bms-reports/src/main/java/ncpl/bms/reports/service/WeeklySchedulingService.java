@@ -3,17 +3,17 @@ import com.lowagie.text.*;
 import com.lowagie.text.pdf.*;
 import lombok.extern.slf4j.Slf4j;
 import ncpl.bms.reports.model.dao.ReportTemplate;
+import ncpl.bms.reports.model.dto.ParameterDescriptor;
 import ncpl.bms.reports.model.dto.ReportDTO;
 import ncpl.bms.reports.util.DateConverter;
+import ncpl.bms.reports.util.HeaderTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.ClassPathResource;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
-import java.io.ByteArrayInputStream;
+import org.springframework.transaction.support.TransactionTemplate;
 import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.sql.PreparedStatement;
+import java.sql.Timestamp;
 import java.text.SimpleDateFormat;
 import java.time.*;
 import java.time.format.DateTimeFormatter;
@@ -26,7 +26,7 @@ import java.util.List;
 @Slf4j
 public class WeeklySchedulingService {
     @Autowired
-    private ReportDataService reportDataService;
+    private ReportPivotService reportPivotService;
 
     @Autowired
     private ReportTemplateService templateService;
@@ -37,71 +37,67 @@ public class WeeklySchedulingService {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private ReportPdfResources pdfResources;
+
+    @Autowired
+    private ReportStorage reportStorage;
+
+    @Autowired
+    private ReportRepository reportRepository;
+
+    @Autowired
+    private ReportStampService reportStampService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
     @Value("${report.heading}")
     private String heading;
 
     @Autowired
     private DateConverter dateConverter;
 
-    private List<Map<String, Object>> reportDataList = null;
-
     public void generatePdfWeeklySchedule(Long templateId, String fromDateTime, String toDate, String username,  String assignedTo, String assigned_approver) throws Exception {
-        reportDataList = reportDataService.generateReportData(templateId, fromDateTime, toDate);
+        ReportPivot pivot = reportPivotService.buildPivot(templateId, fromDateTime, toDate);
+        if (!pivot.hasData()) {
+            throw new RuntimeException("No report data found for template " + templateId + " in the selected range");
+        }
 
         // Convert the date range to 'dd-MM-yyyy HH:mm:ss' format
         SimpleDateFormat dateTimeFormatter = new SimpleDateFormat("dd-MM-yyyy HH:mm:ss");
         String formattedFromDateTime = dateTimeFormatter.format(new Date(Long.parseLong(fromDateTime)));
         String formattedToDateTime = dateTimeFormatter.format(new Date(Long.parseLong(toDate)));
 
-//        Map<String, Map<String, Integer>> statistics = reportDataService.calculateStatistics(templateId, fromDateTime, toDate);
+        // All per-report state lives in the context, so concurrent generations do not share anything
+        ReportRenderContext context = new ReportRenderContext(templateId, pivot, extractParameterRanges(templateId),
+                pivot.getColumns(), formattedFromDateTime, formattedToDateTime, username);
+
         Document document = new Document(PageSize.A4.rotate());
 
         ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
         PdfWriter writer = PdfWriter.getInstance(document, byteArrayOutputStream);
 
         // Use TablePageEvent if required for header/footer
-        WeeklySchedulingService.TablePageEvent event = new WeeklySchedulingService.TablePageEvent(formattedFromDateTime, formattedToDateTime, username);
+        WeeklySchedulingService.TablePageEvent event = new WeeklySchedulingService.TablePageEvent(context);
         writer.setPageEvent(event);
 
         document.open();
 
-        Map<String, Object> stringObjectMap = reportDataList.get(0);
-        PdfPTable table = new PdfPTable(stringObjectMap.size());
+        PdfPTable table = new PdfPTable(context.getColumnCount());
         table.setWidthPercentage(100f);
         table.setSpacingBefore(5);
 
         PdfPCell cell = new PdfPCell();
-        addTableHeader(stringObjectMap, table, cell);
-
-        // Extract "From" and "To" values for each parameter
-        Map<String, double[]> parameterRanges = extractParameterRanges(templateId);
-
-        for (Map<String, Object> map : reportDataList) {
-            for (Map.Entry<String, Object> entry : map.entrySet()) {
-                String valueStr = String.valueOf(entry.getValue());
-                if (valueStr == null || valueStr.trim().isEmpty() || valueStr.equals("null")) {
-                    valueStr = "";
-                }
-
-                PdfPCell valueCell = new PdfPCell(new Phrase(valueStr));
-                valueCell.setHorizontalAlignment(Element.ALIGN_CENTER);
-
-                if (!valueStr.isEmpty()) {
-                    double value = Double.parseDouble(valueStr);
-                    String paramName = entry.getKey();
-                    double[] range = parameterRanges.get(paramName);
-                    if (range != null) {
-                        double fromValue = range[0];
-                        double toValue = range[1];
-                        if (value > toValue) {
-                            valueCell.setBackgroundColor(CMYKColor.RED);
-                        } else if (value < fromValue) {
-                            valueCell.setBackgroundColor(CMYKColor.BLUE);
-                        }
-                    }
-                }
-
-                table.addCell(valueCell);
+        addTableHeader(context, table, cell);
+
+        // Thresholds and cell styles are resolved once; values above the range are red, below blue
+        ReportColumnPlan plan = new ReportColumnPlan(context, "", true);
+        for (int slot = 0; slot < pivot.getSlotCount(); slot++) {
+            table.addCell(plan.timeCell(pivot.getSlotTime(slot)));
+
+            for (int c = 0; c < pivot.getColumnCount(); c++) {
+                table.addCell(pivot.hasValue(c, slot) ? plan.valueCell(c, pivot.getValue(c, slot)) : plan.missingCell());
             }
         }
 //        addStatisticsRow("Max", statistics, table);
@@ -119,64 +115,23 @@ public class WeeklySchedulingService {
         //int chk = (assigned_approver == null) ? 0 : 1;
         int chk = (assigned_approver == null || assigned_approver.trim().isEmpty()) ? 0 : 1;
         // Insert the PDF into the database using JdbcTemplate
-        String sql = "INSERT INTO stored_reports_weekly (name, from_date, to_date, pdf_data, generated_by, generated_date, assigned_review, assigned_approver, is_approver_required) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
-        jdbcTemplate.update(connection -> {
-            PreparedStatement ps = connection.prepareStatement(sql);
-            ps.setString(1, pdfFileName);  // Set the formatted file name
-            ps.setString(2, fromDateTime);
-            ps.setString(3, toDate);
-            ps.setBytes(4, byteArrayOutputStream.toByteArray());
-            ps.setString(5, username);
-            ps.setString(6, currentDateStr);
-            ps.setString(7, assignedTo);
-            ps.setString(8, assigned_approver);
-            log.info("APPROVER IS {}", assigned_approver);
-            log.info("chk is {} " ,chk);
-            ps.setBoolean(9, chk==1);
-            return ps;
-        });
+        ReportStorage.StoredPdf pdf = reportStorage.store(byteArrayOutputStream.toByteArray());
+        String sql = "INSERT INTO stored_reports_weekly (name, from_date, to_date, pdf_data, generated_by, generated_date, assigned_review, assigned_approver, is_approver_required, pdf_hash, pdf_size, generated_at, template_id) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        log.info("APPROVER IS {}", assigned_approver);
+        log.info("chk is {} " ,chk);
+        reportRepository.insert(ReportKind.WEEKLY, sql, pdfFileName, fromDateTime, toDate, pdf.getBlob(), username,
+                currentDateStr, assignedTo, assigned_approver, chk == 1, pdf.getHash(), pdf.getSize(),
+                new Timestamp(currentTimeMillis), templateId);
     }
 
     private Map<String, double[]> extractParameterRanges(Long templateId) {
-        ReportTemplate template = templateService.getById(templateId);
         Map<String, double[]> parameterRanges = new HashMap<>();
-
-        for (String parameter : template.getParameters()) {
-            String cleanParameter = removeSuffix(parameter);
-            double fromValue = getFromValue(parameter);
-            double toValue = getToValue(parameter);
-            parameterRanges.put(cleanParameter, new double[]{fromValue, toValue});
+        for (ParameterDescriptor parameter : templateService.getById(templateId).getParameterDescriptors()) {
+            parameterRanges.put(parameter.getColumn(), new double[]{parameter.getLow(), parameter.getHigh()});
         }
-
         return parameterRanges;
     }
 
-    private String removeSuffix(String columnName) {
-        if (columnName.contains("_From_")) {
-            return columnName.substring(0, columnName.indexOf("_From_"));
-        }
-        return columnName;
-    }
-
-    private double getFromValue(String paramName) {
-        if (paramName.contains("_From_")) {
-            int fromIndex = paramName.lastIndexOf("_From_") + 6;
-            int toIndex = paramName.lastIndexOf("_To_");
-            String fromStr = paramName.substring(fromIndex, toIndex);
-            return Double.parseDouble(fromStr);
-        }
-        return Double.NEGATIVE_INFINITY;  // Default if no "From" found
-    }
-
-    private double getToValue(String paramName) {
-        if (paramName.contains("_To_")) {
-            int toIndex = paramName.lastIndexOf("_To_") + 4;
-            String toStr = paramName.substring(toIndex);
-            return Double.parseDouble(toStr);
-        }
-        return Double.POSITIVE_INFINITY;  // Default if no "To" found
-    }
-
 
     //------------------Vishal (Code Added)
 
@@ -197,7 +152,7 @@ public class WeeklySchedulingService {
 
 
 
-    private void addTableHeader(Map<String, Object> stringObjectMap, PdfPTable table, PdfPCell cell) {
+    private void addTableHeader(ReportRenderContext context, PdfPTable table, PdfPCell cell) {
         cell.setBackgroundColor(CMYKColor.GRAY);
         cell.setPadding(5);
         cell.setHorizontalAlignment(Element.ALIGN_CENTER);
@@ -206,8 +161,10 @@ public class WeeklySchedulingService {
 
         table.getDefaultCell().setHorizontalAlignment(Element.ALIGN_CENTER);
         table.getDefaultCell().setVerticalAlignment(Element.ALIGN_CENTER);
-        for (Map.Entry<String,Object> entry : stringObjectMap.entrySet()) {
-            cell.setPhrase(new Phrase(entry.getKey(), font));
+        cell.setPhrase(new Phrase("timestamp", font));
+        table.addCell(cell);
+        for (String column : context.getHeaders()) {
+            cell.setPhrase(new Phrase(column, font));
             table.addCell(cell);
         }
     }
@@ -215,23 +172,44 @@ public class WeeklySchedulingService {
     private class TablePageEvent extends PdfPageEventHelper {
 
 
+        private final ReportRenderContext context;
         private final String fromDateTime;
         private final String toDateTime;
         private final String username;
+        // Header and footer are the same on every page: laid out once, then drawn from templates
+        private HeaderTemplate header;
+        private PdfTemplate footer;
 
 
-        public TablePageEvent(String fromDateTime, String toDateTime, String username) {
-            this.fromDateTime = fromDateTime;
-            this.toDateTime = toDateTime;
-            this.username = username;
+        public TablePageEvent(ReportRenderContext context) {
+            this.context = context;
+            this.fromDateTime = context.getFromDateTime();
+            this.toDateTime = context.getToDateTime();
+            this.username = context.getUsername();
         }
 
 
         public void onStartPage(PdfWriter writer, Document document) {
+            if (header == null) {
+                header = new HeaderTemplate(writer, document, buildHeaderTable());
+            }
+            header.addTo(writer, document);
+
+            if(writer.getCurrentPageNumber() > 1) {
+
+                PdfPTable table = new PdfPTable(context.getColumnCount());
+                table.setWidthPercentage(100f);
+                table.setSpacingBefore(5);
+                addTableHeader(context, table, new PdfPCell());
+                document.add(table);
+            }
+
+        }
+
+        private PdfPTable buildHeaderTable() {
 
             Font fontTitle = FontFactory.getFont(FontFactory.HELVETICA_BOLD);
             fontTitle.setSize(13);
-            PdfPCell cell = new PdfPCell();
 
             // Create Table Cells for table header
             PdfPTable headerTable = new PdfPTable(3);
@@ -245,13 +223,10 @@ public class WeeklySchedulingService {
             PdfPCell cell1 = new PdfPCell(new Paragraph("Cell 1"));
             int noBorder = Rectangle.NO_BORDER;
             cell1.setBorder(noBorder);
-            Image image = null;
-            try {
-                image = Image.getInstance(new ClassPathResource("static/images/logo1.png").getURL());
-            } catch (IOException e) {
-                throw new RuntimeException(e);
+            Image image = pdfResources.getLogo();
+            if (image != null) {
+                cell1.setImage(image);
             }
-            cell1.setImage(image);
             PdfPCell cell2 = new PdfPCell(new Paragraph(""));
             cell2.setBorder(noBorder);
 
@@ -293,29 +268,17 @@ public class WeeklySchedulingService {
             headerTable.addCell(cell7);
             headerTable.addCell(cell8);
             headerTable.addCell(cell9);
-            document.add(headerTable);
-
-            if(writer.getCurrentPageNumber() > 1) {
-
-                Map<String, Object> stringObjectMap = reportDataList.get(0);
-
-                PdfPTable table = new PdfPTable(stringObjectMap.size());
-                table.setWidthPercentage(100f);
-                table.setSpacingBefore(5);
-                addTableHeader(stringObjectMap, table, cell);
-                document.add(table);
-            }
-
+            return headerTable;
         }
 
         public ReportDTO getReportById(Long reportId) {
-            String sql = "SELECT name, from_date, to_date, pdf_data, generated_by, generated_date, is_approved, approved_by, approved_date, assigned_review, reviewed_by, review_date, is_approver_required, assigned_approver FROM stored_reports WHERE id = ?";
+            String sql = "SELECT name, from_date, to_date, pdf_data, pdf_hash, generated_by, generated_date, is_approved, approved_by, approved_date, assigned_review, reviewed_by, review_date, is_approver_required, assigned_approver FROM stored_reports WHERE id = ?";
             return jdbcTemplate.queryForObject(sql, new Object[]{reportId}, (rs, rowNum) -> new ReportDTO(
                     reportId,
                     rs.getString("name"),
                     rs.getString("from_date"),
                     rs.getString("to_date"),
-                    rs.getBytes("pdf_data"),
+                    reportStorage.read(rs, "pdf_data"),
                     rs.getString("generated_by"),
                     rs.getString("generated_date"),
                     rs.getBoolean("is_approved"),
@@ -334,6 +297,13 @@ public class WeeklySchedulingService {
 
 
         public void onEndPage(PdfWriter writer, Document document) {
+            if (footer == null) {
+                footer = buildFooterTemplate(writer, document);
+            }
+            writer.getDirectContent().addTemplate(footer, document.left(), document.bottom() + 20 - footer.getHeight());
+        }
+
+        private PdfTemplate buildFooterTemplate(PdfWriter writer, Document document) {
             PdfPTable footerTable = new PdfPTable(2);
 
             footerTable.setWidthPercentage(100);
@@ -360,12 +330,11 @@ public class WeeklySchedulingService {
             footerTable.addCell(cell1);
             footerTable.addCell(cell2);
 
-            try {
-                footerTable.setTotalWidth(document.right() - document.left());
-                footerTable.writeSelectedRows(0, -1, document.left(), document.bottom() + 20, writer.getDirectContent());
-            } catch (DocumentException e) {
-                e.printStackTrace();
-            }
+            footerTable.setTotalWidth(document.right() - document.left());
+            float height = footerTable.getTotalHeight();
+            PdfTemplate template = writer.getDirectContent().createTemplate(document.right() - document.left(), height);
+            footerTable.writeSelectedRows(0, -1, 0, height, template);
+            return template;
         }
 
     }
@@ -416,7 +385,7 @@ public class WeeklySchedulingService {
 
 
     public List<ReportDTO> getAllWeeklyReports() {
-        String sql = "SELECT id, name, from_date, to_date, generated_by, generated_date, is_approved, approved_by, approved_date, assigned_review, reviewed_by, review_date, is_approver_required, assigned_approver FROM stored_reports_weekly ORDER BY generated_date DESC";
+        String sql = "SELECT id, name, from_date, to_date, generated_by, generated_date, is_approved, approved_by, approved_date, assigned_review, reviewed_by, review_date, is_approver_required, assigned_approver FROM stored_reports_weekly ORDER BY generated_at DESC, id DESC";
         return jdbcTemplate.query(sql, (rs, rowNum) -> new ReportDTO(
                 rs.getLong("id"),
                 rs.getString("name"),
@@ -437,13 +406,13 @@ public class WeeklySchedulingService {
     }
 
     public ReportDTO getWeeklyReportById(Long reportId) {
-        String sql = "SELECT name, from_date, to_date, pdf_data, generated_by, generated_date, is_approved, approved_by, approved_date, assigned_review, reviewed_by, review_date, is_approver_required, assigned_approver FROM stored_reports_weekly WHERE id = ?";
+        String sql = "SELECT name, from_date, to_date, pdf_data, pdf_hash, generated_by, generated_date, is_approved, approved_by, approved_date, assigned_review, reviewed_by, review_date, is_approver_required, assigned_approver FROM stored_reports_weekly WHERE id = ?";
         return jdbcTemplate.queryForObject(sql, new Object[]{reportId}, (rs, rowNum) -> new ReportDTO(
                 reportId,
                 rs.getString("name"),
                 rs.getString("from_date"),
                 rs.getString("to_date"),
-                rs.getBytes("pdf_data"),
+                reportStorage.read(rs, "pdf_data"),
                 rs.getString("generated_by"),
                 rs.getString("generated_date"),
                 rs.getBoolean("is_approved"),
@@ -461,70 +430,33 @@ public class WeeklySchedulingService {
         // Update the PDF and approval details in the database
         long reviewedTimeMillis = System.currentTimeMillis();
         String sql = "UPDATE stored_reports_weekly SET reviewed_by = ?, review_date = ? WHERE id = ?";
-        jdbcTemplate.update(sql, username, String.valueOf(reviewedTimeMillis), reportId);
+        reportRepository.update(ReportKind.WEEKLY, reportId, sql, username, String.valueOf(reviewedTimeMillis), reportId);
     }
 
     public void approveReport(Long reportId, String username) throws Exception {
-        // Fetch the existing PDF from the database
-        ReportDTO reportDTO = getReportById(reportId);
-        if (reportDTO == null) {
+        // Only records the approval; the stamp is drawn into the PDF when it is next downloaded
+        long approvedTimeMillis = System.currentTimeMillis();
+        String sql = "UPDATE stored_reports_weekly SET is_approved = ?, approved_by = ?, approved_date = ? WHERE id = ?";
+        Integer updated = transactionTemplate.execute(status -> {
+            int rows = reportRepository.update(ReportKind.WEEKLY, reportId, sql, true, username, String.valueOf(approvedTimeMillis), reportId);
+            if (rows > 0) {
+                reportStampService.addStamp(ReportKind.WEEKLY, reportId, ReportStampService.APPROVE, username, approvedTimeMillis);
+            }
+            return rows;
+        });
+        if (updated == null || updated == 0) {
             throw new Exception("Report not found");
         }
-
-        // Read the existing PDF
-        PdfReader pdfReader = new PdfReader(new ByteArrayInputStream(reportDTO.getPdfData()));
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-        PdfStamper pdfStamper = new PdfStamper(pdfReader, byteArrayOutputStream);
-
-        // Get the content of the last page
-        PdfContentByte content = pdfStamper.getOverContent(pdfReader.getNumberOfPages());
-
-        // Create a table similar to the footer style
-        PdfPTable footerTable = new PdfPTable(1);
-        footerTable.setWidthPercentage(100);
-
-        Font fontTiltle = FontFactory.getFont(FontFactory.HELVETICA_BOLD);
-        fontTiltle.setSize(13);
-
-        // For PDF: using the formatter to show in 'yyyy-MM-dd' format
-        LocalDate currentDate = LocalDate.now();
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-        String formattedDate = currentDate.format(formatter);
-
-        PdfPCell reviewCell = new PdfPCell(new Paragraph("Reviewed By:\nSupervisor: " + username + "\nDate: " + formattedDate, fontTiltle));
-        reviewCell.setBorder(Rectangle.NO_BORDER);
-        reviewCell.setHorizontalAlignment(Element.ALIGN_RIGHT);
-
-        footerTable.addCell(reviewCell);
-
-        // Set the table's position at the bottom right of the last page
-        Rectangle pageSize = pdfReader.getPageSize(pdfReader.getNumberOfPages());
-        float leftMargin = pageSize.getLeft();
-        float bottomMargin = pageSize.getBottom();
-        float rightMargin = pageSize.getRight();
-
-        footerTable.setTotalWidth(rightMargin - leftMargin);
-        footerTable.writeSelectedRows(0, -1, leftMargin, bottomMargin + 50, content);
-
-        pdfStamper.close();
-        pdfReader.close();
-
-        // Convert the current time to milliseconds for storing in the database
-        long approvedTimeMillis = System.currentTimeMillis();
-
-        // Update the PDF and approval details in the database
-        String sql = "UPDATE stored_reports_weekly SET pdf_data = ?, is_approved = ?, approved_by = ?, approved_date = ? WHERE id = ?";
-        jdbcTemplate.update(sql, byteArrayOutputStream.toByteArray(), true, username, String.valueOf(approvedTimeMillis), reportId);
     }
 
     public ReportDTO getReportById(Long reportId) {
-        String sql = "SELECT name, from_date, to_date, pdf_data, generated_by, generated_date, is_approved, approved_by, approved_date, assigned_review, reviewed_by, review_date, is_approver_required, assigned_approver FROM stored_reports_daily WHERE id = ?";
+        String sql = "SELECT name, from_date, to_date, pdf_data, pdf_hash, generated_by, generated_date, is_approved, approved_by, approved_date, assigned_review, reviewed_by, review_date, is_approver_required, assigned_approver FROM stored_reports_daily WHERE id = ?";
         return jdbcTemplate.queryForObject(sql, new Object[]{reportId}, (rs, rowNum) -> new ReportDTO(
                 reportId,
                 rs.getString("name"),
                 rs.getString("from_date"),
                 rs.getString("to_date"),
-                rs.getBytes("pdf_data"),
+                reportStorage.read(rs, "pdf_data"),
                 rs.getString("generated_by"),
                 rs.getString("generated_date"),
                 rs.getBoolean("is_approved"),
@@ -0,0 +1,52 @@
+package ncpl.bms.reports.util;
+
+import com.lowagie.text.Document;
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.Rectangle;
+import com.lowagie.text.pdf.PdfPCell;
+import com.lowagie.text.pdf.PdfPTable;
+import com.lowagie.text.pdf.PdfTemplate;
+import com.lowagie.text.pdf.PdfWriter;
+
+/**
+ * A page header table laid out once per document into a PdfTemplate. Each page then reserves the
+ * header's height in the flow and draws the template over it, so the PDF holds the header content a
+ * single time and every page only references it.
+ */
+public class HeaderTemplate {
+
+    private final PdfTemplate template;
+    private final float height;
+    private final PdfPTable spacer;
+
+    /** Must be created while the document is open, e.g. from the first onStartPage. */
+    public HeaderTemplate(PdfWriter writer, Document document, PdfPTable table) {
+        float width = document.right() - document.left();
+        table.setTotalWidth(width);
+        table.setLockedWidth(true);
+        height = table.getTotalHeight();
+        template = writer.getDirectContent().createTemplate(width, height);
+        table.writeSelectedRows(0, -1, 0, height, template);
+
+        // Takes the place of document.add(table), spacing included
+        spacer = new PdfPTable(1);
+        spacer.setWidthPercentage(100);
+        spacer.setSpacingBefore(table.spacingBefore());
+        spacer.setSpacingAfter(table.spacingAfter());
+        PdfPCell cell = new PdfPCell();
+        cell.setBorder(Rectangle.NO_BORDER);
+        cell.setFixedHeight(height);
+        spacer.addCell(cell);
+    }
+
+    public void addTo(PdfWriter writer, Document document) throws DocumentException {
+        // The spacer goes first, its top is where the flow currently stands
+        float top = writer.getVerticalPosition(false) - spacer.spacingBefore();
+        document.add(spacer);
+        writer.getDirectContent().addTemplate(template, document.left(), top - height);
+    }
+
+    public float getHeight() {
+        return height;
+    }
+}
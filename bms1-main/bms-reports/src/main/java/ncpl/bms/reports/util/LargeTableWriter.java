@@ -0,0 +1,54 @@
+package ncpl.bms.reports.util;
+
+import com.lowagie.text.Document;
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.pdf.PdfPTable;
+
+/**
+ * Writes a PdfPTable of any length in large-table mode: every {@code flushRows} rows the finished rows
+ * are laid out and dropped, so only one batch of cells is ever held. Pages break wherever the rows run
+ * out of room and the header rows repeat on each page.
+ */
+public class LargeTableWriter {
+
+    private static final int DEFAULT_FLUSH_ROWS = 100;
+
+    private final Document document;
+    private final PdfPTable table;
+    private final int flushRows;
+    private final float spacingAfter;
+    private int rows;
+
+    public LargeTableWriter(Document document, PdfPTable table) {
+        this(document, table, DEFAULT_FLUSH_ROWS);
+    }
+
+    /** Call after the header rows have been added and {@code setHeaderRows} set. */
+    public LargeTableWriter(Document document, PdfPTable table, int flushRows) {
+        this.document = document;
+        this.table = table;
+        this.flushRows = flushRows;
+        // Spacing would otherwise be applied around every flushed batch
+        this.spacingAfter = table.spacingAfter();
+        table.setSpacingAfter(0);
+        table.setComplete(false);
+    }
+
+    // Call once per completed body row.
+    public void rowAdded() throws DocumentException {
+        if (++rows % flushRows == 0) {
+            document.add(table);
+            table.setSpacingBefore(0);
+        }
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public void finish() throws DocumentException {
+        table.setSpacingAfter(spacingAfter);
+        table.setComplete(true);
+        document.add(table);
+    }
+}
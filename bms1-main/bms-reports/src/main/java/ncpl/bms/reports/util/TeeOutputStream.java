@@ -0,0 +1,84 @@
+package ncpl.bms.reports.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes every byte to two streams, e.g. the file a report is stored from and the HTTP response.
+ * The primary must get every byte; once a write to the secondary fails (the client went away) the
+ * secondary is dropped and the primary is still written to the end.
+ * Closing closes the primary stream only; the secondary is just flushed, so a servlet stream stays open.
+ */
+@Slf4j
+public class TeeOutputStream extends OutputStream {
+
+    private final OutputStream primary;
+    private final OutputStream secondary;
+    private boolean secondaryFailed;
+
+    public TeeOutputStream(OutputStream primary, OutputStream secondary) {
+        this.primary = primary;
+        this.secondary = secondary;
+    }
+
+    // True once the secondary stream failed and stopped receiving bytes
+    public boolean isSecondaryFailed() {
+        return secondaryFailed;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        primary.write(b);
+        if (!secondaryFailed) {
+            try {
+                secondary.write(b);
+            } catch (IOException e) {
+                dropSecondary(e);
+            }
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        primary.write(b, off, len);
+        if (!secondaryFailed) {
+            try {
+                secondary.write(b, off, len);
+            } catch (IOException e) {
+                dropSecondary(e);
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        primary.flush();
+        flushSecondary();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flushSecondary();
+        } finally {
+            primary.close();
+        }
+    }
+
+    private void flushSecondary() {
+        if (!secondaryFailed) {
+            try {
+                secondary.flush();
+            } catch (IOException e) {
+                dropSecondary(e);
+            }
+        }
+    }
+
+    private void dropSecondary(IOException e) {
+        secondaryFailed = true;
+        log.info("Secondary stream failed, writing the primary only: {}", e.getMessage());
+    }
+}
@@ -0,0 +1,93 @@
+package ncpl.bms.reports.model.dto;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParameterDescriptorTest {
+
+	@Test
+	void parsesNegativeAndDecimalBounds() {
+		ParameterDescriptor descriptor = ParameterDescriptor.parse("EMS_NEW_T1_From_-5.5_To_10.25_Unit_C");
+
+		assertEquals("EMS_NEW_T1", descriptor.getColumn());
+		assertEquals(-5.5, descriptor.getLow());
+		assertEquals(10.25, descriptor.getHigh());
+		assertEquals("C", descriptor.getUnit());
+		assertTrue(descriptor.hasRange());
+	}
+
+	@Test
+	void parsesToBeforeFrom() {
+		ParameterDescriptor descriptor = ParameterDescriptor.parse("EMS_NEW_T1_To_25_From_20_Unit_C");
+
+		assertEquals("EMS_NEW_T1", descriptor.getColumn());
+		assertEquals(20, descriptor.getLow());
+		assertEquals(25, descriptor.getHigh());
+		assertEquals("C", descriptor.getUnit());
+	}
+
+	@Test
+	void parsesToWithoutFromBeforeUnit() {
+		ParameterDescriptor descriptor = ParameterDescriptor.parse("EMS_NEW_RH1_To_60_Unit_%RH");
+
+		assertEquals("EMS_NEW_RH1", descriptor.getColumn());
+		assertEquals(Double.NEGATIVE_INFINITY, descriptor.getLow());
+		assertEquals(60, descriptor.getHigh());
+		assertEquals("%RH", descriptor.getUnit());
+		assertFalse(descriptor.hasRange());
+	}
+
+	@Test
+	void parsesUnitBeforeBounds() {
+		ParameterDescriptor descriptor = ParameterDescriptor.parse("EMS_NEW_T1_Unit_C_From_2_To_8");
+
+		assertEquals("EMS_NEW_T1", descriptor.getColumn());
+		assertEquals(2, descriptor.getLow());
+		assertEquals(8, descriptor.getHigh());
+		assertEquals("C", descriptor.getUnit());
+	}
+
+	@Test
+	void malformedBoundsFallBackToInfinite() {
+		ParameterDescriptor descriptor = ParameterDescriptor.parse("EMS_NEW_T1_From_abc_To_1.2.3_Unit_C");
+
+		assertEquals("EMS_NEW_T1", descriptor.getColumn());
+		assertEquals(Double.NEGATIVE_INFINITY, descriptor.getLow());
+		assertEquals(Double.POSITIVE_INFINITY, descriptor.getHigh());
+		assertEquals("C", descriptor.getUnit());
+		assertFalse(descriptor.hasRange());
+	}
+
+	@Test
+	void emptyBoundsFallBackToInfinite() {
+		ParameterDescriptor descriptor = ParameterDescriptor.parse("EMS_NEW_T1_From__To_");
+
+		assertEquals("EMS_NEW_T1", descriptor.getColumn());
+		assertEquals(Double.NEGATIVE_INFINITY, descriptor.getLow());
+		assertEquals(Double.POSITIVE_INFINITY, descriptor.getHigh());
+		assertEquals("", descriptor.getUnit());
+	}
+
+	@Test
+	void plainTableNameHasNoRangeOrUnit() {
+		ParameterDescriptor descriptor = ParameterDescriptor.parse("EMS_NEW_DP1");
+
+		assertEquals("EMS_NEW_DP1", descriptor.getColumn());
+		assertEquals("", descriptor.getUnit());
+		assertFalse(descriptor.hasRange());
+		assertEquals("Pressure", descriptor.getHeader(Map.of("EMS_NEW_DP1", "Pressure")));
+	}
+
+	@Test
+	void headerShowsUnitAndRange() {
+		ParameterDescriptor descriptor = ParameterDescriptor.parse("EMS_NEW_T1_From_-5_To_10_Unit_C");
+
+		assertEquals("Temp(C)\nRange: -5 - 10", descriptor.getHeader(Map.of("EMS_NEW_T1", "Temp")));
+	}
+
+}
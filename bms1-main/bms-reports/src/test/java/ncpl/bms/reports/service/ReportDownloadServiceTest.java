@@ -0,0 +1,205 @@
+package ncpl.bms.reports.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class ReportDownloadServiceTest {
+
+	private static final String TABLE = "stored_reports";
+	private static final String DISPOSITION = "inline; filename=\"report.pdf\"";
+	private static final String ETAG = "\"abc123-2\"";
+
+	@Mock
+	private ReportStorage reportStorage;
+
+	@Mock
+	private ReportStampService reportStampService;
+
+	@InjectMocks
+	private ReportDownloadService downloadService;
+
+	@BeforeEach
+	void setUp() {
+		ReportStorage.PdfInfo info = mock(ReportStorage.PdfInfo.class);
+		when(info.getHash()).thenReturn("abc123");
+		when(info.getSize()).thenReturn(1000L);
+		when(info.getVersion()).thenReturn(2);
+		when(reportStorage.getInfo(TABLE, 5L)).thenReturn(info);
+		// Mockito answers 0 for a Long, which would look like a rendition
+		when(reportStampService.getRendition(any(), any())).thenReturn(null);
+	}
+
+	@Test
+	void sendsWholePdfWithoutRange() throws Exception {
+		ResponseEntity<StreamingResponseBody> response = download(new HttpHeaders());
+
+		assertEquals(HttpStatus.OK, response.getStatusCode());
+		assertEquals(ETAG, response.getHeaders().getETag());
+		assertEquals(1000L, response.getHeaders().getContentLength());
+		assertEquals("bytes", response.getHeaders().getFirst(HttpHeaders.ACCEPT_RANGES));
+		writeBody(response);
+		verify(reportStorage).writeTo(eq(TABLE), eq(5L), any(OutputStream.class));
+	}
+
+	@Test
+	void notModifiedWhenEtagMatches() {
+		HttpHeaders request = new HttpHeaders();
+		request.setIfNoneMatch(ETAG);
+
+		ResponseEntity<StreamingResponseBody> response = download(request);
+
+		assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+		assertEquals(ETAG, response.getHeaders().getETag());
+		assertNull(response.getBody());
+	}
+
+	@Test
+	void notModifiedForWeakOrWildcardMatch() {
+		HttpHeaders weak = new HttpHeaders();
+		weak.setIfNoneMatch("W/" + ETAG);
+		HttpHeaders wildcard = new HttpHeaders();
+		wildcard.setIfNoneMatch("*");
+
+		assertEquals(HttpStatus.NOT_MODIFIED, download(weak).getStatusCode());
+		assertEquals(HttpStatus.NOT_MODIFIED, download(wildcard).getStatusCode());
+	}
+
+	@Test
+	void sendsWholePdfWhenEtagDiffers() {
+		HttpHeaders request = new HttpHeaders();
+		request.setIfNoneMatch("\"abc123-1\"");
+
+		assertEquals(HttpStatus.OK, download(request).getStatusCode());
+	}
+
+	@Test
+	void partialContentForSingleRange() throws Exception {
+		HttpHeaders request = new HttpHeaders();
+		request.set(HttpHeaders.RANGE, "bytes=100-199");
+
+		ResponseEntity<StreamingResponseBody> response = download(request);
+
+		assertEquals(HttpStatus.PARTIAL_CONTENT, response.getStatusCode());
+		assertEquals("bytes 100-199/1000", response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+		assertEquals(100L, response.getHeaders().getContentLength());
+		writeBody(response);
+		verify(reportStorage).writeTo(eq(TABLE), eq(5L), eq(100L), eq(100L), any(OutputStream.class));
+	}
+
+	@Test
+	void partialContentForSuffixAndOpenRanges() {
+		HttpHeaders suffix = new HttpHeaders();
+		suffix.set(HttpHeaders.RANGE, "bytes=-100");
+		HttpHeaders open = new HttpHeaders();
+		open.set(HttpHeaders.RANGE, "bytes=990-");
+
+		assertEquals("bytes 900-999/1000", download(suffix).getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+		assertEquals("bytes 990-999/1000", download(open).getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+	}
+
+	@Test
+	void partialContentWhenIfRangeMatches() {
+		HttpHeaders request = new HttpHeaders();
+		request.set(HttpHeaders.RANGE, "bytes=0-9");
+		request.set(HttpHeaders.IF_RANGE, ETAG);
+
+		assertEquals(HttpStatus.PARTIAL_CONTENT, download(request).getStatusCode());
+	}
+
+	@Test
+	void rangeNotSatisfiableBeyondEnd() {
+		HttpHeaders request = new HttpHeaders();
+		request.set(HttpHeaders.RANGE, "bytes=2000-2999");
+
+		ResponseEntity<StreamingResponseBody> response = download(request);
+
+		assertEquals(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE, response.getStatusCode());
+		assertEquals("bytes */1000", response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+		assertNull(response.getBody());
+	}
+
+	@Test
+	void multipleRangesFallBackToWholePdf() throws Exception {
+		HttpHeaders request = new HttpHeaders();
+		request.set(HttpHeaders.RANGE, "bytes=0-9,20-29");
+
+		ResponseEntity<StreamingResponseBody> response = download(request);
+
+		assertEquals(HttpStatus.OK, response.getStatusCode());
+		assertEquals(1000L, response.getHeaders().getContentLength());
+		assertNull(response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+		writeBody(response);
+		verify(reportStorage).writeTo(eq(TABLE), eq(5L), any(OutputStream.class));
+		verify(reportStorage, never()).writeTo(eq(TABLE), eq(5L), anyLong(), anyLong(), any(OutputStream.class));
+	}
+
+	@Test
+	void staleIfRangeOrMalformedRangeSendsWholePdf() {
+		HttpHeaders stale = new HttpHeaders();
+		stale.set(HttpHeaders.RANGE, "bytes=0-9");
+		stale.set(HttpHeaders.IF_RANGE, "\"abc123-1\"");
+		HttpHeaders malformed = new HttpHeaders();
+		malformed.set(HttpHeaders.RANGE, "bytes=nine-ten");
+
+		assertEquals(HttpStatus.OK, download(stale).getStatusCode());
+		assertEquals(HttpStatus.OK, download(malformed).getStatusCode());
+	}
+
+	@Test
+	void servesStampedRenditionWhenThereIsOne() {
+		ReportStorage.PdfInfo info = mock(ReportStorage.PdfInfo.class);
+		when(info.getSize()).thenReturn(500L);
+		when(info.getVersion()).thenReturn(0);
+		when(reportStampService.getRendition(TABLE, 5L)).thenReturn(7L);
+		when(reportStorage.getInfo(ReportStampService.RENDITIONS, 7L)).thenReturn(info);
+
+		ResponseEntity<StreamingResponseBody> response = download(new HttpHeaders());
+
+		assertEquals(HttpStatus.OK, response.getStatusCode());
+		assertEquals("\"" + ReportStampService.RENDITIONS + "-7-0\"", response.getHeaders().getETag());
+		assertEquals(500L, response.getHeaders().getContentLength());
+	}
+
+	@Test
+	void notFoundWithoutStoredPdf() {
+		when(reportStorage.getInfo(TABLE, 6L)).thenReturn(null);
+
+		ResponseEntity<StreamingResponseBody> response = downloadService.download(TABLE, 6L, DISPOSITION, new HttpHeaders());
+
+		assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+	}
+
+	private ResponseEntity<StreamingResponseBody> download(HttpHeaders request) {
+		return downloadService.download(TABLE, 5L, DISPOSITION, request);
+	}
+
+	private static void writeBody(ResponseEntity<StreamingResponseBody> response) throws Exception {
+		response.getBody().writeTo(new ByteArrayOutputStream());
+	}
+
+}
@@ -0,0 +1,132 @@
+package ncpl.bms.reports.service;
+
+import ncpl.bms.reports.model.dto.ReportListFilter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class ReportListingServiceTest {
+
+	private static final String TABLE = "stored_reports";
+	private static final long GENERATED = 1700000000000L;
+
+	@Mock
+	private JdbcTemplate jdbcTemplate;
+
+	@InjectMocks
+	private ReportListingService listingService;
+
+	private final Map<Long, String> legacyRows = new LinkedHashMap<>();
+
+	@BeforeEach
+	void setUp() {
+		when(jdbcTemplate.queryForObject(anyString(), eq(Integer.class), any(Object[].class))).thenReturn(0);
+		when(jdbcTemplate.queryForObject(anyString(), eq(Integer.class), eq(TABLE))).thenReturn(1);
+		doAnswer(invocation -> {
+			RowCallbackHandler handler = invocation.getArgument(1);
+			for (Map.Entry<Long, String> row : legacyRows.entrySet()) {
+				ResultSet rs = mock(ResultSet.class);
+				when(rs.getLong("id")).thenReturn(row.getKey());
+				when(rs.getString("generated_date")).thenReturn(row.getValue());
+				handler.processRow(rs);
+			}
+			return null;
+		}).when(jdbcTemplate).query(startsWith("SELECT id, generated_date FROM " + TABLE), any(RowCallbackHandler.class));
+	}
+
+	@Test
+	void backfillsLegacyRowWithTheTimeANewRowGets() {
+		legacyRows.put(1L, Long.toString(GENERATED));
+
+		listingService.run();
+
+		// A new row generated at the same instant stores new Timestamp(millis), see PdfService.storePdf
+		Timestamp newRow = new Timestamp(GENERATED);
+		assertArrayEquals(new Object[]{newRow, 1L}, backfilledRows().get(0));
+	}
+
+	@Test
+	void backfillsUnparseableDateAsUnknownTime() {
+		legacyRows.put(2L, "not a date");
+
+		listingService.run();
+
+		assertArrayEquals(new Object[]{ReportListingService.UNKNOWN_TIME, 2L}, backfilledRows().get(0));
+	}
+
+	@Test
+	void skipsBackfillWhenEveryRowHasGeneratedAt() {
+		listingService.run();
+
+		verify(jdbcTemplate, never()).batchUpdate(anyString(), anyList());
+	}
+
+	@Test
+	void timeFilterMatchesLegacyAndNewRows() {
+		legacyRows.put(1L, Long.toString(GENERATED));
+		listingService.run();
+		Object backfilled = backfilledRows().get(0)[0];
+
+		List<Object> args = new ArrayList<>();
+		doAnswer(invocation -> {
+			Object[] arguments = invocation.getArguments();
+			for (int i = 2; i < arguments.length; i++) {
+				Object argument = arguments[i];
+				if (argument instanceof Object[]) {
+					Collections.addAll(args, (Object[]) argument);
+				} else {
+					args.add(argument);
+				}
+			}
+			return Collections.emptyList();
+		}).when(jdbcTemplate).query(anyString(), any(RowMapper.class), any(Object[].class));
+
+		ReportListFilter filter = new ReportListFilter();
+		filter.setFrom(GENERATED);
+		filter.setTo(GENERATED);
+		listingService.listReports(TABLE, filter);
+
+		// Both bounds equal the stored generated_at, so the row matches whether it was backfilled or written new
+		assertEquals(new Timestamp(GENERATED), backfilled);
+		assertEquals(List.of(backfilled, backfilled), args);
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<Object[]> backfilledRows() {
+		ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+		verify(jdbcTemplate).batchUpdate(eq("UPDATE " + TABLE + " SET generated_at = ? WHERE id = ?"), rows.capture());
+		return rows.getValue();
+	}
+}